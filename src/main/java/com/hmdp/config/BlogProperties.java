@@ -0,0 +1,37 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 博客相关配置，前缀 hmdp.blog
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.blog")
+public class BlogProperties {
+
+    /**
+     * 点赞数写回数据库
+     */
+    private Like like = new Like();
+
+    @Data
+    public static class Like {
+        /**
+         * 点赞数刷新到数据库的间隔，期间同一博客的多次点赞合并为一次写入
+         */
+        private Duration flushInterval = Duration.ofSeconds(1);
+        /**
+         * 每条 UPDATE 语句包含的博客数
+         */
+        private int batchSize = 500;
+        /**
+         * 重新刷新宕机节点未完成记录的间隔
+         */
+        private Duration recoverInterval = Duration.ofMinutes(1);
+    }
+}
@@ -0,0 +1,180 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.CacheRebuildExecutor;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 缓存相关配置，前缀 hmdp.cache
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.cache")
+public class CacheProperties {
+
+    /**
+     * 缓存编码器：json（默认）、binary
+     */
+    private String codec = "json";
+
+    /**
+     * 按缓存前缀（业务名）开启的本地一级缓存，未配置的前缀不走本地缓存
+     */
+    private Map<String, Local> local = new HashMap<>();
+
+    /**
+     * 按缓存前缀开启的布隆过滤器，拦截数据库中不存在的id
+     */
+    private Map<String, Bloom> bloom = new HashMap<>();
+
+    /**
+     * 布隆过滤器新增id的补偿同步，弥补广播丢失
+     */
+    private BloomSync bloomSync = new BloomSync();
+
+    /**
+     * 逻辑过期缓存的重建线程池
+     */
+    private Rebuild rebuild = new Rebuild();
+
+    /**
+     * 数据更新后的缓存失效（延迟双删、发件箱）
+     */
+    private Invalidation invalidation = new Invalidation();
+
+    /**
+     * 热点key探测与本地副本，对所有前缀生效
+     */
+    private HotKey hotKey = new HotKey();
+
+    /**
+     * 启动预热：店铺缓存、店铺类型、店铺GEO索引
+     */
+    private WarmUp warmUp = new WarmUp();
+
+    @Data
+    public static class Local {
+        /**
+         * 最大缓存条数
+         */
+        private int maxSize = 1000;
+        /**
+         * 存活时间
+         */
+        private Duration ttl = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class Bloom {
+        /**
+         * 预计元素个数
+         */
+        private long expectedInsertions = 1000000;
+        /**
+         * 期望误判率
+         */
+        private double falseProbability = 0.01;
+    }
+
+    @Data
+    public static class BloomSync {
+        /**
+         * 从Redis补偿同步新增id的间隔，广播丢失时最多这么久之后生效
+         */
+        private Duration interval = Duration.ofSeconds(10);
+        /**
+         * 新增id在Redis中的保留时长，应大于节点启动加载所需时间
+         */
+        private Duration retention = Duration.ofHours(1);
+    }
+
+    @Data
+    public static class Rebuild {
+        private int corePoolSize = 10;
+        private int maxPoolSize = 10;
+        /**
+         * 等待队列容量
+         */
+        private int queueCapacity = 1000;
+        /**
+         * 队列满时的处理策略
+         */
+        private CacheRebuildExecutor.RejectPolicy rejectPolicy = CacheRebuildExecutor.RejectPolicy.STALE;
+        /**
+         * 应用关闭时等待重建任务完成的最长时间
+         */
+        private Duration shutdownTimeout = Duration.ofSeconds(10);
+    }
+
+    @Data
+    public static class Invalidation {
+        /**
+         * 事务提交后第二次删除缓存的延迟，应大于一次读库并回写缓存的耗时，0表示不做第二次删除
+         */
+        private Duration doubleDeleteDelay = Duration.ofMillis(500);
+        /**
+         * 是否轮询发件箱表 tb_cache_invalidation
+         */
+        private boolean outboxEnabled = true;
+        /**
+         * 发件箱轮询间隔
+         */
+        private Duration pollInterval = Duration.ofSeconds(1);
+        /**
+         * 每次轮询处理的最大条数
+         */
+        private int pollBatchSize = 500;
+    }
+
+    @Data
+    public static class HotKey {
+        private boolean enabled = true;
+        /**
+         * 统计窗口，同时也是热点期的时长
+         */
+        private Duration window = Duration.ofSeconds(10);
+        /**
+         * 窗口切分的子窗口个数，越多滑动越平滑
+         */
+        private int buckets = 10;
+        /**
+         * 单个节点窗口内读取次数达到该值即视为热点
+         */
+        private long threshold = 5000;
+        /**
+         * Count-Min Sketch 的哈希函数个数
+         */
+        private int depth = 4;
+        /**
+         * Count-Min Sketch 每行的计数器个数
+         */
+        private int width = 4096;
+        /**
+         * 本地副本的存活时间，决定热点key更新后最多读到多久的旧数据
+         */
+        private Duration replicaTtl = Duration.ofSeconds(1);
+        private int replicaMaxSize = 1000;
+        /**
+         * 接口返回的热点key个数
+         */
+        private int topN = 20;
+    }
+
+    @Data
+    public static class WarmUp {
+        private boolean enabled = true;
+        /**
+         * 每页从 tb_shop 查询的条数
+         */
+        private int pageSize = 1000;
+        /**
+         * 并行写入Redis的线程数
+         */
+        private int parallelism = 4;
+    }
+}
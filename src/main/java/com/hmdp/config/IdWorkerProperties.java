@@ -0,0 +1,29 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 全局id生成配置，前缀 hmdp.id-worker
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.id-worker")
+public class IdWorkerProperties {
+
+    /**
+     * incr：每个id一次Redis INCR；segment：号段模式，一次INCRBY预留一段序列号，在本地分配
+     */
+    private String mode = "incr";
+
+    /**
+     * 号段模式每次预留的序列号个数
+     */
+    private int step = 1000;
+
+    /**
+     * 当前号段剩余比例低于该值时异步预取下一个号段
+     */
+    private double prefetchRatio = 0.2;
+}
@@ -0,0 +1,109 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 登录相关配置，前缀 hmdp.login
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.login")
+public class LoginProperties {
+
+    /**
+     * 登录会话
+     */
+    private Session session = new Session();
+
+    /**
+     * 登录token
+     */
+    private Token token = new Token();
+
+    /**
+     * 发送验证码、登录的限流
+     */
+    private Limit limit = new Limit();
+
+    @Data
+    public static class Session {
+        /**
+         * 本地会话缓存的存活时间，决定其他途径修改用户信息后本节点最多读到多久的旧数据
+         */
+        private Duration localTtl = Duration.ofSeconds(10);
+        /**
+         * 本地会话缓存的最大条数
+         */
+        private int localMaxSize = 10000;
+        /**
+         * 剩余有效期低于该值时才续期，避免每个请求都执行EXPIRE
+         */
+        private Duration refreshThreshold = Duration.ofDays(29);
+    }
+
+    @Data
+    public static class Token {
+        /**
+         * redis：随机token，用户信息保存在Redis hash中（默认）；signed：用户信息和过期时间签名后作为token，校验不访问Redis
+         */
+        private String mode = "redis";
+        /**
+         * signed 模式的HMAC密钥，所有节点必须一致；为空时启动时随机生成，重启后已签发的token失效
+         */
+        private String secret;
+        /**
+         * signed 模式token的有效期，签发后固定，不续期
+         */
+        private Duration ttl = Duration.ofDays(30);
+        /**
+         * signed 模式从Redis重新加载退出登录黑名单的间隔，补上丢失的订阅消息，同时清理过期记录
+         */
+        private Duration denySyncInterval = Duration.ofMinutes(1);
+    }
+
+    @Data
+    public static class Limit {
+        /**
+         * 是否限流，关闭后仍然限制验证码的错误次数
+         */
+        private boolean enabled = true;
+        /**
+         * 同一验证码最多错误次数，达到后验证码作废，需要重新获取
+         */
+        private int maxAttempts = 5;
+        /**
+         * 同一手机号发送验证码的限制
+         */
+        private List<Window> sendPhone = new ArrayList<>();
+        /**
+         * 同一IP发送验证码的限制
+         */
+        private List<Window> sendIp = new ArrayList<>();
+        /**
+         * 同一手机号登录的限制
+         */
+        private List<Window> loginPhone = new ArrayList<>();
+        /**
+         * 同一IP登录的限制
+         */
+        private List<Window> loginIp = new ArrayList<>();
+    }
+
+    @Data
+    public static class Window {
+        /**
+         * 滑动窗口长度
+         */
+        private Duration window;
+        /**
+         * 窗口内最多次数
+         */
+        private int max;
+    }
+}
@@ -1,6 +1,9 @@
 package com.hmdp.config;
 
 import com.hmdp.utils.MqConstants;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.rabbit.retry.MessageRecoverer;
 import org.springframework.amqp.rabbit.retry.RepublishMessageRecoverer;
@@ -31,4 +34,29 @@ public class MqConfig {
         return new RepublishMessageRecoverer(rabbitTemplate, MqConstants.ERROR_DIRECT, MqConstants.ERROR_KEY);
     }
 
+    /**
+     * 批量消费的监听容器：攒够 batchSize 条或等待下一条消息超过 receiveTimeout 时交给监听方法，手动确认
+     * @param connectionFactory rabbitmq连接工厂
+     * @param messageConverter 消息转换器
+     * @param seckillProperties 秒杀配置
+     * @return 监听容器工厂
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory batchListenerContainerFactory(
+            ConnectionFactory connectionFactory, MessageConverter messageConverter,
+            SeckillProperties seckillProperties) {
+        SeckillProperties.OrderConsumer consumer = seckillProperties.getOrderConsumer();
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setMessageConverter(messageConverter);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(consumer.getBatchSize());
+        factory.setReceiveTimeout(consumer.getReceiveTimeout().toMillis());
+        // 预取数量不小于批大小，否则一批永远攒不满
+        factory.setPrefetchCount(consumer.getBatchSize());
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        return factory;
+    }
+
 }
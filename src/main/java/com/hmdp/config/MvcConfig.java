@@ -1,9 +1,9 @@
 package com.hmdp.config;
 
 import com.hmdp.utils.LoginInterceptor;
+import com.hmdp.utils.LoginSessionCache;
 import com.hmdp.utils.RefreshTokenInterceptor;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -13,12 +13,12 @@ import javax.annotation.Resource;
 public class MvcConfig implements WebMvcConfigurer {
 
     @Resource
-    private StringRedisTemplate stringRedisTemplate;
+    private LoginSessionCache loginSessionCache;
 
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
         // 刷新token拦截器
-        registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate)).addPathPatterns("/**");
+        registry.addInterceptor(new RefreshTokenInterceptor(loginSessionCache)).addPathPatterns("/**");
         // 登录拦截器
         registry.addInterceptor(new LoginInterceptor())
                 .excludePathPatterns(
@@ -27,7 +27,9 @@ public class MvcConfig implements WebMvcConfigurer {
                         "/blog/hot",
                         "/shop/**",
                         "/shop-type/**",
-                        "/voucher/**"
+                        // 只放行优惠券查询，新增、补库存、对账等修改接口需要登录
+                        "/voucher/list/**",
+                        "/cache/**"
                 );
     }
 }
@@ -0,0 +1,178 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 秒杀相关配置，前缀 hmdp.seckill
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.seckill")
+public class SeckillProperties {
+
+    /**
+     * 订单队列的消费方式
+     */
+    private OrderConsumer orderConsumer = new OrderConsumer();
+
+    /**
+     * 下单链路：rabbitmq（默认，脚本之后生成订单id并发送到RabbitMQ）；stream（脚本内生成订单id并写入Redis Stream）
+     */
+    private String orderPipeline = "rabbitmq";
+
+    /**
+     * Redis Stream 下单链路的配置
+     */
+    private Stream stream = new Stream();
+
+    /**
+     * RabbitMQ下单链路的订单消息发送
+     */
+    private Publisher publisher = new Publisher();
+
+    /**
+     * 秒杀接口的限流
+     */
+    private RateLimit rateLimit = new RateLimit();
+
+    /**
+     * Redis库存、用户集合与数据库订单的对账
+     */
+    private Reconcile reconcile = new Reconcile();
+
+    /**
+     * 本地售罄标记的有效期
+     */
+    private Duration soldOutTtl = Duration.ofSeconds(10);
+
+    @Data
+    public static class OrderConsumer {
+        /**
+         * single：逐条消费；batch：批量消费，一次多行插入
+         */
+        private String mode = "single";
+        /**
+         * 批量消费时每批的最大消息数
+         */
+        private int batchSize = 50;
+        /**
+         * 批量消费时等待下一条消息的最长时间，超时则按已收到的消息提交本批
+         */
+        private Duration receiveTimeout = Duration.ofMillis(100);
+    }
+
+    @Data
+    public static class Stream {
+        private String key = "stream.orders";
+        /**
+         * 消费者组
+         */
+        private String group = "g1";
+        /**
+         * 每次读取的最大消息数
+         */
+        private int batchSize = 50;
+        /**
+         * 没有消息时阻塞等待的时间
+         */
+        private Duration block = Duration.ofSeconds(2);
+        /**
+         * 消息超过该时间未确认则认领过来重新处理：其他消费者宕机遗留的，以及本消费者保存失败的
+         */
+        private Duration claimTimeout = Duration.ofSeconds(30);
+        /**
+         * 检查超时未确认消息的间隔
+         */
+        private Duration claimInterval = Duration.ofSeconds(10);
+        /**
+         * 保存失败的消息最多投递次数，未达到时留在pending中等待认领重试，达到后写入死信Stream并把订单标记为失败
+         */
+        private int maxDeliveries = 10;
+        /**
+         * XADD 时按 MAXLEN ~ 近似裁剪的长度上限。已确认的消息会被删除，Stream中只剩未确认的消息，
+         * 该上限只在消费停滞时生效，必须大于允许积压的订单数，否则未消费的订单会被裁掉
+         */
+        private long maxLen = 1000000;
+    }
+
+    @Data
+    public static class Publisher {
+        /**
+         * 内存队列容量，满了之后写入溢出文件
+         */
+        private int bufferCapacity = 10000;
+        /**
+         * 每批发送的最大消息数
+         */
+        private int batchSize = 100;
+        /**
+         * 已发送未确认的最大消息数，超过后暂停发送
+         */
+        private int maxOutstanding = 5000;
+        /**
+         * 发布确认的超时时间，超时重发
+         */
+        private Duration confirmTimeout = Duration.ofSeconds(10);
+        /**
+         * 本地溢出文件路径
+         */
+        private String spillFile = "order-spill.log";
+    }
+
+    @Data
+    public static class Reconcile {
+        /**
+         * 每页从 tb_voucher_order 查询、每批从用户集合 SSCAN 的用户数
+         */
+        private int pageSize = 1000;
+        /**
+         * 秒杀结束超过该时间仍没有订单缓存的用户视为丢失；pending 的订单不论多久都视为处理中，只有 failed 视为丢失
+         */
+        private Duration pendingGrace = Duration.ofMinutes(5);
+        /**
+         * 报告中每类差异最多列出的用户id个数
+         */
+        private int sampleSize = 100;
+    }
+
+    @Data
+    public static class RateLimit {
+        private boolean enabled = true;
+        /**
+         * 同一用户对同一秒杀券两次请求的最小间隔，本地判断
+         */
+        private Duration userInterval = Duration.ofSeconds(1);
+        /**
+         * 一个间隔内本地记录的用户数上限，达到后提前换桶，本地最多记录两倍的用户数
+         */
+        private int userMaxSize = 100000;
+        /**
+         * 单个节点每个秒杀券每秒放行的请求数
+         */
+        private double localRate = 2000;
+        /**
+         * 单个节点每个秒杀券允许的突发请求数
+         */
+        private double localBurst = 2000;
+        /**
+         * 全局（所有节点合计）每个秒杀券每秒放行的请求数，Redis令牌桶
+         */
+        private double globalRate = 5000;
+        /**
+         * 全局令牌桶容量
+         */
+        private double globalBurst = 5000;
+        /**
+         * 节点一次从全局令牌桶申请的令牌数
+         */
+        private int leaseSize = 50;
+        /**
+         * 全局令牌桶没有令牌时，本节点在该时间内不再申请，直接拒绝
+         */
+        private Duration leaseBackoff = Duration.ofMillis(50);
+    }
+}
@@ -0,0 +1,70 @@
+package com.hmdp.controller;
+
+import com.hmdp.dto.Result;
+import com.hmdp.runner.CacheWarmUpRunner;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheRebuildExecutor;
+import com.hmdp.utils.HotKeyDetector;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * <p>
+ * 缓存运行状态
+ * </p>
+ */
+@RestController
+@RequestMapping("/cache")
+public class CacheController {
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private CacheRebuildExecutor cacheRebuildExecutor;
+
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+
+    @Resource
+    private CacheWarmUpRunner cacheWarmUpRunner;
+
+    /**
+     * 查询各缓存前缀本地缓存、Redis的命中统计
+     * @return 统计数据
+     */
+    @GetMapping("/stats")
+    public Result stats() {
+        return Result.ok(cacheClient.stats());
+    }
+
+    /**
+     * 查询缓存重建线程池的队列深度、重建耗时、拒绝次数等指标
+     * @return 统计数据
+     */
+    @GetMapping("/rebuild/stats")
+    public Result rebuildStats() {
+        return Result.ok(cacheRebuildExecutor.stats());
+    }
+
+    /**
+     * 查询本节点最近一个窗口内读取次数最高的缓存key
+     * @return key、估计次数、是否处于热点期
+     */
+    @GetMapping("/hotkeys")
+    public Result hotKeys() {
+        return Result.ok(hotKeyDetector.topKeys());
+    }
+
+    /**
+     * 查询启动预热的进度、耗时，以及就绪后店铺缓存回源数据库的次数
+     * @return 统计数据
+     */
+    @GetMapping("/warm-up")
+    public Result warmUpStats() {
+        return Result.ok(cacheWarmUpRunner.stats());
+    }
+}
@@ -6,6 +6,7 @@ import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.service.IShopService;
+import com.hmdp.utils.CacheBloomFilter;
 import com.hmdp.utils.SystemConstants;
 import org.springframework.web.bind.annotation.*;
 
@@ -26,6 +27,9 @@ public class ShopController {
     @Resource
     public IShopService shopService;
 
+    @Resource
+    private CacheBloomFilter cacheBloomFilter;
+
     /**
      * 根据id查询商铺信息
      * @param id 商铺id
@@ -47,6 +51,8 @@ public class ShopController {
     public Result saveShop(@RequestBody Shop shop) {
         // 写入数据库
         shopService.save(shop);
+        // 加入布隆过滤器
+        cacheBloomFilter.add("shop", shop.getId());
         // 返回店铺id
         return Result.ok(shop.getId());
     }
@@ -58,9 +64,8 @@ public class ShopController {
      */
     @PutMapping
     public Result updateShop(@RequestBody Shop shop) {
-        // 写入数据库
-        shopService.updateById(shop);
-        return Result.ok();
+        // 写入数据库并删除缓存
+        return shopService.update(shop);
     }
 
     /**
@@ -7,6 +7,7 @@ import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.UserInfo;
 import com.hmdp.service.IUserInfoService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.LoginCodeLimiter;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
@@ -33,13 +34,16 @@ public class UserController {
     @Resource
     private IUserInfoService userInfoService;
 
+    @Resource
+    private LoginCodeLimiter loginCodeLimiter;
+
     /**
      * 发送手机验证码
      */
     @PostMapping("code")
-    public Result sendCode(@RequestParam("phone") String phone) {
+    public Result sendCode(@RequestParam("phone") String phone, HttpServletRequest request) {
         // 发送验证码
-        return userService.sendCode(phone);
+        return userService.sendCode(phone, request);
     }
 
     /**
@@ -47,9 +51,18 @@ public class UserController {
      * @param loginForm 登录参数，包含手机号、验证码；或者手机号、密码
      */
     @PostMapping("/login")
-    public Result login(@RequestBody LoginFormDTO loginForm){
+    public Result login(@RequestBody LoginFormDTO loginForm, HttpServletRequest request){
         // 实现登入功能
-        return userService.login(loginForm);
+        return userService.login(loginForm, request);
+    }
+
+    /**
+     * 查询本节点发送验证码、登录的放行和拒绝次数
+     * @return 统计数据
+     */
+    @GetMapping("/limiter/stats")
+    public Result limiterStats() {
+        return Result.ok(loginCodeLimiter.stats());
     }
 
     /**
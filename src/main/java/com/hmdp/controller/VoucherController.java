@@ -1,9 +1,12 @@
 package com.hmdp.controller;
 
 
+import com.hmdp.dto.ReconcileReport;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Voucher;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.SeckillRateLimiter;
+import com.hmdp.utils.SeckillReconciler;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
@@ -23,6 +26,12 @@ public class VoucherController {
     @Resource
     private IVoucherService voucherService;
 
+    @Resource
+    private SeckillReconciler seckillReconciler;
+
+    @Resource
+    private SeckillRateLimiter seckillRateLimiter;
+
     /**
      * 新增普通券
      * @param voucher 优惠券信息
@@ -45,6 +54,42 @@ public class VoucherController {
         return Result.ok(voucher.getId());
     }
 
+    /**
+     * 补充秒杀券库存
+     * @param voucherId 优惠券id
+     * @param count 补充数量
+     * @return 结果
+     */
+    @PutMapping("seckill/{id}/stock")
+    public Result addSeckillStock(@PathVariable("id") Long voucherId, @RequestParam("count") Integer count) {
+        return voucherService.addSeckillStock(voucherId, count);
+    }
+
+    /**
+     * 秒杀券Redis库存、用户集合与数据库订单对账
+     * @param voucherId 优惠券id
+     * @param repair 是否修复差异，默认只报告
+     * @return 对账结果
+     */
+    @PostMapping("seckill/{id}/reconcile")
+    public Result reconcileSeckill(@PathVariable("id") Long voucherId,
+                                   @RequestParam(value = "repair", defaultValue = "false") Boolean repair) {
+        ReconcileReport report = seckillReconciler.reconcile(voucherId, repair);
+        if (report == null) {
+            return Result.fail("秒杀券不存在");
+        }
+        return Result.ok(report);
+    }
+
+    /**
+     * 查询本节点秒杀限流的放行、各级拒绝次数
+     * @return 统计数据
+     */
+    @GetMapping("seckill/limiter/stats")
+    public Result rateLimiterStats() {
+        return Result.ok(seckillRateLimiter.stats());
+    }
+
     /**
      * 查询店铺的优惠券列表
      * @param shopId 店铺id
@@ -3,6 +3,8 @@ package com.hmdp.controller;
 
 import com.hmdp.dto.Result;
 import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.OrderPublisher;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -25,8 +27,30 @@ public class VoucherOrderController {
     @Resource
     private IVoucherOrderService voucherOrderService;
 
+    @Resource
+    private OrderPublisher orderPublisher;
+
     @PostMapping("seckill/{id}")
     public Result seckillVoucher(@PathVariable("id") Long voucherId) {
         return voucherOrderService.seckillVoucher(voucherId);
     }
+
+    @GetMapping("/{id}")
+    public Result queryOrder(@PathVariable("id") Long orderId) {
+        return voucherOrderService.queryOrder(orderId);
+    }
+
+    @GetMapping("/of/me")
+    public Result queryMyOrders() {
+        return voucherOrderService.queryMyOrders();
+    }
+
+    /**
+     * 查询本节点订单消息发送的统计：已发送、已确认、溢出文件、重发等
+     * @return 统计数据
+     */
+    @GetMapping("/publisher/stats")
+    public Result publisherStats() {
+        return Result.ok(orderPublisher.stats());
+    }
 }
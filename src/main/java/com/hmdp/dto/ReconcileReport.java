@@ -0,0 +1,55 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.util.List;
+
+/**
+ * 秒杀券Redis库存、用户集合与数据库订单的对账结果
+ */
+@Data
+@Accessors(chain = true)
+public class ReconcileReport {
+    private Long voucherId;
+    /**
+     * 是否修复差异
+     */
+    private Boolean repair;
+    /**
+     * 数据库中下单的用户数
+     */
+    private Long dbOrders;
+    /**
+     * Redis用户集合中扫描到的用户数
+     */
+    private Long redisUsers;
+    /**
+     * 数据库有订单、Redis用户集合中没有的用户数
+     */
+    private Long missingInRedis;
+    private List<Long> missingInRedisSamples;
+    /**
+     * Redis用户集合中有、数据库没有订单且已不在处理中的用户数（订单进入异常队列、死信或丢失）
+     */
+    private Long missingInDb;
+    private List<Long> missingInDbSamples;
+    /**
+     * Redis用户集合中有、订单仍在处理中的用户数，不算差异
+     */
+    private Long inFlight;
+    private Long dbStock;
+    private Long redisStock;
+    /**
+     * 库存差值：(数据库库存 + 数据库订单数) - (Redis库存 + Redis用户数)，修复用户集合后计算
+     */
+    private Long stockDrift;
+    /**
+     * 库存差值是否已修正，秒杀进行中不修正
+     */
+    private Boolean stockRepaired;
+    /**
+     * 耗时，毫秒
+     */
+    private Long cost;
+}
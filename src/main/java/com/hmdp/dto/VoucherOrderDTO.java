@@ -0,0 +1,38 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.time.LocalDateTime;
+
+/**
+ * 用户订单缓存中的订单摘要
+ */
+@Data
+@Accessors(chain = true)
+public class VoucherOrderDTO {
+    /**
+     * 已受理，等待异步保存
+     */
+    public static final String PENDING = "pending";
+    /**
+     * 已保存到数据库
+     */
+    public static final String PERSISTED = "persisted";
+    /**
+     * 保存失败
+     */
+    public static final String FAILED = "failed";
+
+    private Long id;
+    private Long voucherId;
+    /**
+     * 处理状态：pending、persisted、failed
+     */
+    private String state;
+    /**
+     * 订单状态，与 tb_voucher_order.status 一致，保存前为空
+     */
+    private Integer status;
+    private LocalDateTime createTime;
+}
@@ -0,0 +1,48 @@
+package com.hmdp.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * <p>
+ * 缓存失效发件箱，与业务数据在同一事务中写入，由后台任务删除对应缓存
+ * </p>
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@Accessors(chain = true)
+@TableName("tb_cache_invalidation")
+public class CacheInvalidation implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 主键
+     */
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 缓存标识前缀（业务名），例如 shop
+     */
+    private String keyPrefix;
+
+    /**
+     * 数据id
+     */
+    private Long dataId;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime createTime;
+
+
+}
@@ -52,6 +52,11 @@ public class SeckillVoucher implements Serializable {
      */
     private LocalDateTime endTime;
 
+    /**
+     * 库存分片数，1 表示不分片
+     */
+    private Integer stockShards;
+
     /**
      * 更新时间
      */
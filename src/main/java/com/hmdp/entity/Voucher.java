@@ -90,6 +90,12 @@ public class Voucher implements Serializable {
     @TableField(exist = false)
     private LocalDateTime endTime;
 
+    /**
+     * 秒杀库存的分片数，默认1（不分片）
+     */
+    @TableField(exist = false)
+    private Integer stockShards;
+
     /**
      * 创建时间
      */
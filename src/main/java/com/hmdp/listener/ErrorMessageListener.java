@@ -1,20 +1,48 @@
 package com.hmdp.listener;
 
+import com.hmdp.entity.VoucherOrder;
 import com.hmdp.utils.MqConstants;
+import com.hmdp.utils.UserOrderCache;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.*;
+import org.springframework.amqp.rabbit.retry.RepublishMessageRecoverer;
+import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.Resource;
+
+/**
+ * 消费异常队列：重试耗尽的消息由 RepublishMessageRecoverer 连同异常信息投递到这里，
+ * 订单消息在用户订单缓存中标记为保存失败
+ */
 @Slf4j
 @Component
 public class ErrorMessageListener {
 
+    @Resource
+    private MessageConverter messageConverter;
+
+    @Resource
+    private UserOrderCache userOrderCache;
+
     @RabbitListener(bindings = @QueueBinding(
             value = @Queue(MqConstants.ERROR_QUEUE),
             exchange = @Exchange(MqConstants.ERROR_DIRECT),
             key = MqConstants.ERROR_KEY
     ))
-    public void errorMessageListener(Exception e) {
-        log.error(e.getMessage(), e);
+    public void errorMessageListener(Message message) {
+        Object error = message.getMessageProperties().getHeaders().get(RepublishMessageRecoverer.X_EXCEPTION_MESSAGE);
+        Object payload;
+        try {
+            payload = messageConverter.fromMessage(message);
+        } catch (Exception e) {
+            log.error("消息消费失败：{}，无法解析的消息：{}", error, message);
+            return;
+        }
+        log.error("消息消费失败：{}，消息：{}", error, payload);
+        if (payload instanceof VoucherOrder) {
+            userOrderCache.failed((VoucherOrder) payload);
+        }
     }
 }
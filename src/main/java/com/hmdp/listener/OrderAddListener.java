@@ -1,25 +1,28 @@
 package com.hmdp.listener;
 
-import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.entity.VoucherOrder;
-import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.hmdp.utils.MqConstants;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.annotation.Exchange;
 import org.springframework.amqp.rabbit.annotation.Queue;
 import org.springframework.amqp.rabbit.annotation.QueueBinding;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
 
+/**
+ * 逐条消费订单消息，hmdp.seckill.order-consumer.mode=single（默认）时生效
+ */
+@Slf4j
 @Component
+@ConditionalOnProperty(prefix = "hmdp.seckill.order-consumer", name = "mode", havingValue = "single",
+        matchIfMissing = true)
 public class OrderAddListener {
 
-    @Resource
-    public ISeckillVoucherService seckillVoucherService;
-
     @Resource
     public IVoucherOrderService voucherOrderService;
 
@@ -28,19 +31,14 @@ public class OrderAddListener {
             exchange = @Exchange(MqConstants.ORDER_TOPIC),
             key = MqConstants.ORDER_ADD_KEY
     ))
-    @Transactional
     public void orderAddListener(VoucherOrder voucherOrder) {
-        // 扣库存
-        boolean isSuccess = seckillVoucherService.lambdaUpdate()
-                .setSql("stock = stock - 1")
-                .eq(SeckillVoucher::getVoucherId, voucherOrder.getVoucherId())
-                .gt(SeckillVoucher::getStock, 0)  // 乐观锁
-                .update();
-        if (!isSuccess) {
-            throw new RuntimeException("库存扣减失败");
+        try {
+            // 扣库存，保存订单信息
+            voucherOrderService.createOrder(voucherOrder);
+        } catch (DuplicateKeyException e) {
+            // 确认超时重发的消息，订单已保存
+            log.debug("订单已存在：{}", voucherOrder.getId());
         }
-        // 保存订单信息
-        voucherOrderService.save(voucherOrder);
     }
 
 }
@@ -0,0 +1,117 @@
+package com.hmdp.listener;
+
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.MqConstants;
+import com.rabbitmq.client.Channel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.retry.MessageRecoverer;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.boot.autoconfigure.amqp.RabbitProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量消费订单消息，hmdp.seckill.order-consumer.mode=batch 时生效。
+ * 一批订单在一个事务中按优惠券汇总扣库存、一条多行INSERT保存，成功后一次确认整批；
+ * 整批失败时逐条保存，每条按 spring.rabbitmq.listener.simple.retry 的次数和间隔重试（与逐条消费一致），
+ * 重试耗尽仍失败的消息才投递到异常队列
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "hmdp.seckill.order-consumer", name = "mode", havingValue = "batch")
+public class OrderBatchAddListener {
+
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+
+    @Resource
+    private MessageConverter messageConverter;
+
+    @Resource
+    private MessageRecoverer messageRecoverer;
+
+    @Resource
+    private RabbitProperties rabbitProperties;
+
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue(MqConstants.ORDER_ADD_QUEUE),
+            exchange = @Exchange(MqConstants.ORDER_TOPIC),
+            key = MqConstants.ORDER_ADD_KEY
+    ), containerFactory = "batchListenerContainerFactory")
+    public void orderBatchAddListener(List<Message> messages, Channel channel)
+            throws IOException, InterruptedException {
+        // 逐条解析，无法解析的消息单独投递到异常队列并确认，不影响同批其他消息
+        List<Message> valid = new ArrayList<>(messages.size());
+        List<VoucherOrder> orders = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            try {
+                orders.add((VoucherOrder) messageConverter.fromMessage(message));
+                valid.add(message);
+            } catch (Exception e) {
+                log.error("无法解析的订单消息：{}", message, e);
+                messageRecoverer.recover(message, e);
+                channel.basicAck(message.getMessageProperties().getDeliveryTag(), false);
+            }
+        }
+        if (orders.isEmpty()) {
+            return;
+        }
+        try {
+            voucherOrderService.createOrders(orders);
+            // 确认到最后一条有效消息为止的所有消息，之前已单独确认的消息不受影响
+            channel.basicAck(valid.get(valid.size() - 1).getMessageProperties().getDeliveryTag(), true);
+            return;
+        } catch (Exception e) {
+            log.warn("批量保存{}条订单失败，逐条重试：{}", orders.size(), e.getMessage());
+        }
+        for (int i = 0; i < valid.size(); i++) {
+            Message message = valid.get(i);
+            Exception failure = createWithRetry(orders.get(i));
+            if (failure != null) {
+                messageRecoverer.recover(message, failure);
+            }
+            channel.basicAck(message.getMessageProperties().getDeliveryTag(), false);
+        }
+    }
+
+    /**
+     * 保存单个订单，失败时按监听容器的重试配置退避重试；批量容器没有重试拦截器，在这里补上
+     * @param order 订单
+     * @return 重试耗尽后的最后一个异常，成功或订单已存在返回null
+     * @throws InterruptedException 重试等待时线程被中断（停机），未确认的消息之后重新投递
+     */
+    private Exception createWithRetry(VoucherOrder order) throws InterruptedException {
+        RabbitProperties.ListenerRetry retry = rabbitProperties.getListener().getSimple().getRetry();
+        int maxAttempts = retry.isEnabled() ? Math.max(retry.getMaxAttempts(), 1) : 1;
+        long interval = retry.getInitialInterval().toMillis();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                voucherOrderService.createOrder(order);
+                return null;
+            } catch (DuplicateKeyException e) {
+                // 重复投递的消息，订单已保存
+                log.debug("订单已存在：{}", order.getId());
+                return null;
+            } catch (Exception e) {
+                if (attempt >= maxAttempts) {
+                    return e;
+                }
+                log.warn("保存订单{}失败，第{}次重试：{}", order.getId(), attempt, e.getMessage());
+            }
+            Thread.sleep(interval);
+            interval = Math.min((long) (interval * retry.getMultiplier()), retry.getMaxInterval().toMillis());
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.hmdp.listener;
+
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.UserOrderCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 消费Redis Stream中的订单，hmdp.seckill.order-pipeline=stream 时生效。
+ * 消费者组批量读取，一批订单一个事务保存后确认并删除；启动时先处理本消费者未确认的消息，
+ * 并定期认领超时未确认的消息重新处理：其他消费者宕机遗留的消息，以及保存失败留在pending中的消息。
+ * 无法解析的消息直接写入死信Stream后确认；保存失败的消息（如数据库短暂不可用）不确认，
+ * 投递次数达到上限后才写入死信Stream并把订单标记为失败
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "hmdp.seckill", name = "order-pipeline", havingValue = "stream")
+public class OrderStreamListener {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+
+    @Resource
+    private SeckillProperties seckillProperties;
+
+    @Resource
+    private UserOrderCache userOrderCache;
+
+    /**
+     * 消费者名称，进程号@主机名
+     */
+    private final String consumerName = ManagementFactory.getRuntimeMXBean().getName();
+
+    private volatile boolean running = true;
+
+    private Thread thread;
+
+    @PostConstruct
+    private void init() {
+        SeckillProperties.Stream stream = seckillProperties.getStream();
+        // 创建消费者组，Stream不存在时一并创建；已存在时忽略
+        try {
+            stringRedisTemplate.execute((RedisCallback<Object>) connection -> connection.execute("XGROUP",
+                    bytes("CREATE"), bytes(stream.getKey()), bytes(stream.getGroup()), bytes("0"), bytes("MKSTREAM")));
+        } catch (Exception e) {
+            if (!String.valueOf(e.getMessage()).contains("BUSYGROUP")) {
+                throw e;
+            }
+        }
+        thread = new Thread(this::consume, "order-stream-consumer");
+        thread.start();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        thread.join(seckillProperties.getStream().getBlock().toMillis() * 2);
+    }
+
+    private void consume() {
+        SeckillProperties.Stream stream = seckillProperties.getStream();
+        Consumer consumer = Consumer.from(stream.getGroup(), consumerName);
+        long lastClaim = 0;
+        // 启动时先处理本消费者上次未确认的消息，按id向后翻页，处理失败仍未确认的消息交给认领任务重试
+        boolean recovering = true;
+        String recoverFrom = "0";
+        while (running) {
+            try {
+                if (recovering) {
+                    List<MapRecord<String, Object, Object>> pending = read(consumer,
+                            StreamReadOptions.empty().count(stream.getBatchSize()), ReadOffset.from(recoverFrom));
+                    if (pending == null || pending.isEmpty()) {
+                        recovering = false;
+                    } else {
+                        recoverFrom = pending.get(pending.size() - 1).getId().getValue();
+                        handle(pending);
+                    }
+                    continue;
+                }
+                if (System.currentTimeMillis() - lastClaim > stream.getClaimInterval().toMillis()) {
+                    claimTimeout(stream);
+                    lastClaim = System.currentTimeMillis();
+                }
+                List<MapRecord<String, Object, Object>> records = read(consumer,
+                        StreamReadOptions.empty().count(stream.getBatchSize()).block(stream.getBlock()),
+                        ReadOffset.lastConsumed());
+                if (records != null && !records.isEmpty()) {
+                    handle(records);
+                }
+            } catch (Exception e) {
+                log.error("处理订单Stream异常", e);
+                // 未确认的消息留在pending中，重新从pending开始处理
+                recovering = true;
+                recoverFrom = "0";
+                sleep(1000);
+            }
+        }
+    }
+
+    /**
+     * 读取订单Stream。read 的 StreamOffset 参数是泛型可变参数，调用时会创建泛型数组，
+     * 这里只传入一个元素、不保留数组，不会造成堆污染
+     */
+    @SuppressWarnings("unchecked")
+    private List<MapRecord<String, Object, Object>> read(Consumer consumer, StreamReadOptions options, ReadOffset offset) {
+        return stringRedisTemplate.opsForStream().read(consumer, options,
+                StreamOffset.create(seckillProperties.getStream().getKey(), offset));
+    }
+
+    /**
+     * 认领超时未确认的消息并处理：其他消费者宕机遗留的，以及本消费者保存失败的。
+     * XCLAIM 会增加消息的投递次数，投递次数达到上限后写入死信Stream
+     */
+    private void claimTimeout(SeckillProperties.Stream stream) {
+        PendingMessages pending = stringRedisTemplate.opsForStream()
+                .pending(stream.getKey(), stream.getGroup(), Range.unbounded(), stream.getBatchSize());
+        List<RecordId> ids = new ArrayList<>();
+        for (PendingMessage message : pending) {
+            if (message.getElapsedTimeSinceLastDelivery().compareTo(stream.getClaimTimeout()) >= 0) {
+                ids.add(message.getId());
+            }
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+        // StreamOperations 没有 XCLAIM，通过连接执行
+        List<ByteRecord> records = stringRedisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                connection.streamCommands().xClaim(bytes(stream.getKey()), stream.getGroup(), consumerName,
+                        stream.getClaimTimeout(), ids.toArray(new RecordId[0])));
+        if (records == null || records.isEmpty()) {
+            return;
+        }
+        List<MapRecord<String, Object, Object>> claimed = new ArrayList<>(records.size());
+        for (ByteRecord record : records) {
+            claimed.add(record.deserialize(StringRedisSerializer.UTF_8, StringRedisSerializer.UTF_8,
+                    StringRedisSerializer.UTF_8));
+        }
+        log.warn("认领超时未确认的订单消息{}条", claimed.size());
+        handle(claimed);
+    }
+
+    /**
+     * 批量保存订单，确认后删除消息；无法解析的消息直接写入死信Stream，整批失败时逐条保存，
+     * 逐条保存仍失败的消息不确认，留在pending中由认领任务重试，投递次数达到上限后才写入死信Stream
+     */
+    private void handle(List<MapRecord<String, Object, Object>> records) {
+        SeckillProperties.Stream stream = seckillProperties.getStream();
+        List<MapRecord<String, Object, Object>> valid = new ArrayList<>(records.size());
+        List<VoucherOrder> orders = new ArrayList<>(records.size());
+        // 可以确认的消息
+        List<RecordId> ids = new ArrayList<>(records.size());
+        for (MapRecord<String, Object, Object> record : records) {
+            try {
+                orders.add(toOrder(record.getValue()));
+                valid.add(record);
+            } catch (Exception e) {
+                // 格式错误的消息重试也不会成功，不能留在pending中阻塞后续消息
+                log.error("无法解析的订单消息，写入死信Stream：{}", record, e);
+                deadLetter(stream, record, e);
+                ids.add(record.getId());
+            }
+        }
+        if (!orders.isEmpty()) {
+            try {
+                voucherOrderService.createOrders(orders);
+                valid.forEach(record -> ids.add(record.getId()));
+            } catch (Exception e) {
+                log.warn("批量保存{}条订单失败，逐条重试：{}", orders.size(), e.getMessage());
+                for (int i = 0; i < valid.size(); i++) {
+                    MapRecord<String, Object, Object> record = valid.get(i);
+                    try {
+                        voucherOrderService.createOrder(orders.get(i));
+                        ids.add(record.getId());
+                    } catch (DuplicateKeyException ex) {
+                        // 重复消费的消息，订单已保存
+                        log.debug("订单已存在：{}", orders.get(i).getId());
+                        ids.add(record.getId());
+                    } catch (Exception ex) {
+                        long deliveries = deliveryCount(stream, record.getId());
+                        if (deliveries < stream.getMaxDeliveries()) {
+                            log.warn("保存订单失败，第{}次投递，留在pending中稍后重试：{}", deliveries, record.getValue(), ex);
+                            continue;
+                        }
+                        log.error("保存订单失败，已投递{}次，写入死信Stream：{}", deliveries, record.getValue(), ex);
+                        deadLetter(stream, record, ex);
+                        userOrderCache.failed(orders.get(i));
+                        ids.add(record.getId());
+                    }
+                }
+            }
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+        RecordId[] recordIds = ids.toArray(new RecordId[0]);
+        stringRedisTemplate.opsForStream().acknowledge(stream.getKey(), stream.getGroup(), recordIds);
+        // 已确认的消息不再需要，删除后Stream中只保留未确认的消息
+        stringRedisTemplate.opsForStream().delete(stream.getKey(), recordIds);
+    }
+
+    /**
+     * 消息的投递次数，查询失败时按1次处理，即继续留在pending中
+     */
+    private long deliveryCount(SeckillProperties.Stream stream, RecordId id) {
+        try {
+            PendingMessages pending = stringRedisTemplate.opsForStream().pending(stream.getKey(), stream.getGroup(),
+                    Range.closed(id.getValue(), id.getValue()), 1L);
+            return pending.isEmpty() ? 1 : pending.get(0).getTotalDeliveryCount();
+        } catch (Exception e) {
+            log.warn("查询消息{}的投递次数失败", id, e);
+            return 1;
+        }
+    }
+
+    private void deadLetter(SeckillProperties.Stream stream, MapRecord<String, Object, Object> record, Exception e) {
+        // 已被裁剪的消息在pending中只剩id，内容为空
+        Map<Object, Object> dead = record.getValue() == null ? new HashMap<>() : new HashMap<>(record.getValue());
+        dead.put("id", record.getId().getValue());
+        dead.put("error", String.valueOf(e.getMessage()));
+        stringRedisTemplate.opsForStream().add(stream.getKey() + ".dead", dead);
+    }
+
+    private VoucherOrder toOrder(Map<Object, Object> value) {
+        long timestamp = Long.parseLong(value.get("timestamp").toString());
+        long sequence = Long.parseLong(value.get("sequence").toString());
+        return new VoucherOrder()
+                .setId(RedisIdWorker.compose(timestamp, sequence))
+                .setUserId(Long.valueOf(value.get("userId").toString()))
+                .setVoucherId(Long.valueOf(value.get("voucherId").toString()));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -2,6 +2,9 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.Blog;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -13,4 +16,10 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface BlogMapper extends BaseMapper<Blog> {
 
+    /**
+     * 一条 UPDATE ... CASE 批量设置点赞数
+     * @param blogs 博客列表，只使用id和liked，不能为空
+     * @return 更新行数
+     */
+    int updateLikedBatch(@Param("blogs") List<Blog> blogs);
 }
@@ -0,0 +1,13 @@
+package com.hmdp.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.hmdp.entity.CacheInvalidation;
+
+/**
+ * <p>
+ *  Mapper 接口
+ * </p>
+ */
+public interface CacheInvalidationMapper extends BaseMapper<CacheInvalidation> {
+
+}
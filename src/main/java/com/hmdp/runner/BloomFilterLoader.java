@@ -0,0 +1,77 @@
+package com.hmdp.runner;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.hmdp.mapper.BlogMapper;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.mapper.UserMapper;
+import com.hmdp.utils.CacheBloomFilter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.List;
+
+/**
+ * 启动时从数据库加载 tb_shop、tb_blog、tb_user 的id到布隆过滤器
+ */
+@Slf4j
+@Component
+public class BloomFilterLoader implements ApplicationRunner {
+
+    /**
+     * 每批查询的id数量
+     */
+    private static final int BATCH_SIZE = 5000;
+
+    @Resource
+    private CacheBloomFilter cacheBloomFilter;
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    @Resource
+    private BlogMapper blogMapper;
+
+    @Resource
+    private UserMapper userMapper;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        load("shop", shopMapper);
+        load("blog", blogMapper);
+        load("user", userMapper);
+    }
+
+    /**
+     * 按主键游标分批加载id，select id from xxx where id > ? order by id limit ?
+     * @param keyPrefix 缓存标识前缀（业务名）
+     * @param mapper 对应表的mapper
+     */
+    private <T> void load(String keyPrefix, BaseMapper<T> mapper) {
+        if (!cacheBloomFilter.isConfigured(keyPrefix)) {
+            return;
+        }
+        long lastId = 0;
+        long count = 0;
+        while (true) {
+            List<Object> ids = mapper.selectObjs(new QueryWrapper<T>()
+                    .select("id")
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("limit " + BATCH_SIZE));
+            for (Object id : ids) {
+                lastId = ((Number) id).longValue();
+                cacheBloomFilter.load(keyPrefix, lastId);
+            }
+            count += ids.size();
+            if (ids.size() < BATCH_SIZE) {
+                break;
+            }
+        }
+        log.debug("加载{}条id到布隆过滤器：{}", count, keyPrefix);
+        cacheBloomFilter.markReady(keyPrefix);
+    }
+}
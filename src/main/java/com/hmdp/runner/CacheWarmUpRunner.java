@@ -0,0 +1,214 @@
+package com.hmdp.runner;
+
+import cn.hutool.core.util.RandomUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.config.CacheProperties;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.service.IShopTypeService;
+import com.hmdp.utils.CacheClient;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TTL;
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_KEY;
+
+/**
+ * 启动预热：按主键分页读取 tb_shop，以管道批量写入店铺缓存和 shop:geo:{typeId} GEO索引，并缓存店铺类型列表。
+ * 预热开始时切换为 REFUSING_TRAFFIC，不主动恢复：所有 ApplicationRunner（包括布隆过滤器加载）执行完后
+ * 由 Spring Boot 统一切换为 ACCEPTING_TRAFFIC。预热失败不阻止就绪，未预热的数据按正常流程回源
+ */
+@Slf4j
+@Component
+public class CacheWarmUpRunner implements ApplicationRunner {
+
+    @Resource
+    private CacheProperties cacheProperties;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    @Resource
+    private IShopTypeService shopTypeService;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private ApplicationEventPublisher eventPublisher;
+
+    /**
+     * 预热状态：NOT_STARTED、RUNNING、FINISHED、FAILED、DISABLED
+     */
+    private volatile String state = "NOT_STARTED";
+    private volatile long total;
+    private final LongAdder loaded = new LongAdder();
+    private final LongAdder pages = new LongAdder();
+    private volatile long startTime;
+    private volatile long finishTime;
+    private volatile long readyTime;
+    /**
+     * 就绪时店铺缓存累计的数据库加载次数，用于计算就绪后的回源次数
+     */
+    private volatile long dbLoadsAtReady;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        CacheProperties.WarmUp warmUp = cacheProperties.getWarmUp();
+        if (!warmUp.isEnabled()) {
+            state = "DISABLED";
+            return;
+        }
+        AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.REFUSING_TRAFFIC);
+        startTime = System.currentTimeMillis();
+        state = "RUNNING";
+        try {
+            shopTypeService.cacheTypeList();
+            warmUpShops(warmUp);
+            state = "FINISHED";
+        } catch (Exception e) {
+            // 预热失败不影响服务，未预热的数据按正常流程回源
+            state = "FAILED";
+            log.error("缓存预热失败", e);
+        }
+        finishTime = System.currentTimeMillis();
+        log.info("缓存预热结束：{}，店铺 {}/{}，耗时 {} ms", state, loaded.sum(), total, finishTime - startTime);
+    }
+
+    /**
+     * 记录就绪时间，所有 ApplicationRunner 执行完后由 Spring Boot 发布
+     */
+    @EventListener
+    public void onReadiness(AvailabilityChangeEvent<ReadinessState> event) {
+        if (event.getState() == ReadinessState.ACCEPTING_TRAFFIC && readyTime == 0) {
+            readyTime = System.currentTimeMillis();
+            dbLoadsAtReady = cacheClient.dbLoads("shop");
+        }
+    }
+
+    /**
+     * 主线程按主键游标分页查询，每页交给写入线程池；同时在途的页数不超过并行度的2倍，控制内存占用
+     */
+    private void warmUpShops(CacheProperties.WarmUp warmUp) throws InterruptedException {
+        total = shopMapper.selectCount(null);
+        int parallelism = Math.max(1, warmUp.getParallelism());
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism,
+                r -> new Thread(r, "cache-warm-up-" + threadIndex.incrementAndGet()));
+        Semaphore inFlight = new Semaphore(parallelism * 2);
+        List<Exception> errors = new ArrayList<>();
+        try {
+            long lastId = 0;
+            while (true) {
+                List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                        .gt("id", lastId)
+                        .orderByAsc("id")
+                        .last("limit " + warmUp.getPageSize()));
+                if (shops.isEmpty()) {
+                    break;
+                }
+                lastId = shops.get(shops.size() - 1).getId();
+                inFlight.acquire();
+                pool.execute(() -> {
+                    try {
+                        writePage(shops);
+                        loaded.add(shops.size());
+                        pages.increment();
+                    } catch (Exception e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+                if (shops.size() < warmUp.getPageSize()) {
+                    break;
+                }
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.HOURS);
+        }
+        if (!errors.isEmpty()) {
+            throw new IllegalStateException("写入失败的页数：" + errors.size(), errors.get(0));
+        }
+    }
+
+    /**
+     * 一页店铺：一次管道写入缓存，一次管道写入GEO
+     */
+    private void writePage(List<Shop> shops) {
+        // 每页的过期时间加随机偏移，避免预热的数据同时过期
+        long ttlSeconds = TimeUnit.MINUTES.toSeconds(CACHE_SHOP_TTL) + RandomUtil.randomInt(300);
+        Map<Long, Shop> values = shops.stream()
+                .collect(Collectors.toMap(Shop::getId, Function.identity(), (a, b) -> a, LinkedHashMap::new));
+        cacheClient.setAll("shop", values, ttlSeconds, TimeUnit.SECONDS);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Shop shop : shops) {
+                if (shop.getX() == null || shop.getY() == null) {
+                    continue;
+                }
+                connection.geoCommands().geoAdd(
+                        (SHOP_GEO_KEY + shop.getTypeId()).getBytes(StandardCharsets.UTF_8),
+                        new Point(shop.getX(), shop.getY()),
+                        shop.getId().toString().getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 预热进度与就绪后的回源情况
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("state", state);
+        map.put("total", total);
+        map.put("loaded", loaded.sum());
+        map.put("pages", pages.sum());
+        map.put("progress", total == 0 ? 0 : (double) loaded.sum() / total);
+        if (startTime > 0) {
+            long end = finishTime > 0 ? finishTime : System.currentTimeMillis();
+            map.put("elapsedMillis", end - startTime);
+        }
+        if (startTime > 0 && readyTime > 0) {
+            map.put("startToReadyMillis", readyTime - startTime);
+        }
+        if (readyTime > 0) {
+            long seconds = Math.max(1, (System.currentTimeMillis() - readyTime) / 1000);
+            long dbLoads = cacheClient.dbLoads("shop") - dbLoadsAtReady;
+            map.put("secondsSinceReady", seconds);
+            map.put("shopDbLoadsSinceReady", dbLoads);
+            map.put("shopDbLoadsPerSecond", (double) dbLoads / seconds);
+        }
+        return map;
+    }
+}
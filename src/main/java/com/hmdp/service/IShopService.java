@@ -16,5 +16,7 @@ public interface IShopService extends IService<Shop> {
 
     Shop queryById(Long id);
 
+    Result update(Shop shop);
+
     Result queryShopByType(Integer typeId, Integer current, Double x, Double y);
 }
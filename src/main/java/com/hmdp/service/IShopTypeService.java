@@ -3,6 +3,8 @@ package com.hmdp.service;
 import com.hmdp.entity.ShopType;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 /**
  * <p>
  *  服务类
@@ -13,4 +15,7 @@ import com.baomidou.mybatisplus.extension.service.IService;
  */
 public interface IShopTypeService extends IService<ShopType> {
 
+    List<ShopType> queryTypeList();
+
+    List<ShopType> cacheTypeList();
 }
@@ -17,9 +17,9 @@ import javax.servlet.http.HttpServletRequest;
  */
 public interface IUserService extends IService<User> {
 
-    Result sendCode(String phone);
+    Result sendCode(String phone, HttpServletRequest request);
 
-    Result login(LoginFormDTO loginForm);
+    Result login(LoginFormDTO loginForm, HttpServletRequest request);
 
     Result queryById(Long id);
 
@@ -1,6 +1,5 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
@@ -14,20 +13,29 @@ import com.hmdp.service.IBlogService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.service.IFollowService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.BeanMappers;
+import com.hmdp.utils.BlogLikeCounter;
+import com.hmdp.utils.CacheBloomFilter;
+import com.hmdp.utils.CacheClient;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_USER_TTL;
 import static com.hmdp.utils.RedisConstants.FEED_KEY;
 import static com.hmdp.utils.SystemConstants.DEFAULT_PAGE_SIZE;
 
@@ -51,6 +59,15 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     @Resource
     private IFollowService followService;
 
+    @Resource
+    private CacheBloomFilter cacheBloomFilter;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private BlogLikeCounter blogLikeCounter;
+
     /**
      * 根据id查询blog
      * @param id 博客id
@@ -63,8 +80,9 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         if (blog == null) {
             return Result.fail("笔记不存在");
         }
-        // 设置用户信息
-        queryBlogUser(blog);
+        // 设置用户信息、点赞数
+        queryBlogUsers(Collections.singletonList(blog));
+        blogLikeCounter.fillLiked(Collections.singletonList(blog));
         // 设置blog是否被点赞了
         isBlogLiked(blog);
         return Result.ok(blog);
@@ -83,16 +101,15 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
                 .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
         // 获取当前页数据
         List<Blog> records = page.getRecords();
-        // 设置用户信息
-        records.forEach(blog -> {
-            queryBlogUser(blog);
-            isBlogLiked(blog);
-        });
+        // 批量设置用户信息、点赞数、是否点赞
+        queryBlogUsers(records);
+        blogLikeCounter.fillLiked(records);
+        isBlogsLiked(records);
         return Result.ok(records);
     }
 
     /**
-     * 点赞｜取消点赞博客
+     * 点赞｜取消点赞博客，只修改Redis，点赞数由后台批量写回数据库
      * @param id 博客id
      * @return 结果
      */
@@ -100,25 +117,10 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     public Result likeBlog(Long id) {
         // 获取用户id
         Long userId = UserHolder.getUser().getId();
-        String key = BLOG_LIKED_KEY + id;
-        // 判断用户是否点赞
-        Double score = stringRedisTemplate.opsForZSet().score(key, userId.toString());
-        if (score == null) {
-            // 用户没点赞，点赞数+1
-            boolean isSuccess = lambdaUpdate().setSql("liked = liked + 1")
-                    .eq(Blog::getId, id).update();
-            if (isSuccess) {
-                // 将用户添加进缓存的bolg点赞set集合 zadd key value score
-                stringRedisTemplate.opsForZSet().add(key, userId.toString(), System.currentTimeMillis());
-            }
-        } else {
-            // 用户点赞了，点赞数-1
-            boolean isSuccess = lambdaUpdate().setSql("liked = liked - 1")
-                    .eq(Blog::getId, id).update();
-            // 将用户从缓存的bolg点赞set集合移除
-            if (isSuccess) {
-                stringRedisTemplate.opsForZSet().remove(key, userId.toString());
-            }
+        // 判断用户是否点赞，修改点赞用户集合和点赞数
+        Boolean liked = blogLikeCounter.toggle(id, userId);
+        if (liked == null) {
+            return Result.fail("笔记不存在");
         }
         return Result.ok();
     }
@@ -138,7 +140,7 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         List<UserDTO> users = userService.lambdaQuery()
                 .in(User::getId, ids).last("order by field(id, " + idStr + ")").list()
                 .stream()
-                .map(user -> BeanUtil.copyProperties(user, UserDTO.class))
+                .map(BeanMappers::toUserDTO)
                 .collect(Collectors.toList());
         // 返回
         return Result.ok(users);
@@ -151,6 +153,7 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
                 .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
         // 获取当前页数据
         List<Blog> records = page.getRecords();
+        blogLikeCounter.fillLiked(records);
         return Result.ok(records);
     }
 
@@ -165,6 +168,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
             // 保存笔记失败
             Result.fail("保存笔记失败");
         }
+        // 加入布隆过滤器
+        cacheBloomFilter.add("blog", blog.getId());
         // 查询所有粉丝 select * from tb_follow where follow_user_id = ?
         List<Follow> fans = followService.lambdaQuery().eq(Follow::getFollowUserId, user.getId()).list();
         for (Follow fan : fans) {
@@ -206,28 +211,64 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         // 查询笔记
         List<Blog> blogs = lambdaQuery().in(Blog::getId, ids)
                 .last("ORDER BY FIELD(id, " + idStr + ")").list();
-        for (Blog blog : blogs) {
-            // 查询用户信息
-            queryBlogUser(blog);
-            // 判断笔记是否被当前用户点赞
-            isBlogLiked(blog);
-        }
+        // 批量查询用户信息、点赞数
+        queryBlogUsers(blogs);
+        blogLikeCounter.fillLiked(blogs);
+        // 批量判断笔记是否被当前用户点赞
+        isBlogsLiked(blogs);
         // 封装结果返回
         ScrollResult scrollResult = new ScrollResult(blogs, minTime, os);
         return Result.ok(scrollResult);
     }
 
     /**
-     * 给博客设置作者信息
-     * @param blog 博客
+     * 批量给博客设置作者信息，作者从缓存批量获取，未命中的一次查库
+     * @param blogs 博客集合
      */
-    private void queryBlogUser(Blog blog) {
-        // 查询用户
-        Long userId = blog.getUserId();
-        User user = userService.getById(userId);
+    private void queryBlogUsers(List<Blog> blogs) {
+        if (blogs.isEmpty()) {
+            return;
+        }
+        // 去重后的作者id
+        List<Long> userIds = blogs.stream().map(Blog::getUserId).distinct().collect(Collectors.toList());
+        // 批量查询用户
+        Map<Long, UserDTO> users = cacheClient.multiGet("user", userIds, UserDTO.class,
+                ids -> userService.listByIds(ids).stream()
+                        .collect(Collectors.toMap(User::getId, BeanMappers::toUserDTO)),
+                CACHE_USER_TTL, TimeUnit.MINUTES);
         // 设置用户信息
-        blog.setName(user.getNickName());
-        blog.setIcon(user.getIcon());
+        for (Blog blog : blogs) {
+            UserDTO user = users.get(blog.getUserId());
+            if (user != null) {
+                blog.setName(user.getNickName());
+                blog.setIcon(user.getIcon());
+            }
+        }
+    }
+
+    /**
+     * 批量给博客设置是否喜欢字段，一次管道查询
+     * @param blogs 博客集合
+     */
+    private void isBlogsLiked(List<Blog> blogs) {
+        // 获取登录用户
+        UserDTO user = UserHolder.getUser();
+        if (user == null || blogs.isEmpty()) {
+            // 用户未登录
+            return;
+        }
+        byte[] member = user.getId().toString().getBytes(StandardCharsets.UTF_8);
+        // 管道批量 zscore
+        List<Object> scores = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Blog blog : blogs) {
+                connection.zSetCommands().zScore(
+                        (BLOG_LIKED_KEY + blog.getId()).getBytes(StandardCharsets.UTF_8), member);
+            }
+            return null;
+        });
+        for (int i = 0; i < blogs.size(); i++) {
+            blogs.get(i).setIsLike(scores.get(i) != null);
+        }
     }
 
     /**
@@ -1,13 +1,14 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.BeanMappers;
 import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheInvalidator;
 import org.springframework.data.geo.Distance;
 import org.springframework.data.geo.GeoResult;
 import org.springframework.data.geo.GeoResults;
@@ -15,11 +16,14 @@ import org.springframework.data.redis.connection.RedisGeoCommands;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.domain.geo.GeoReference;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
 
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 import static com.hmdp.utils.SystemConstants.DEFAULT_PAGE_SIZE;
@@ -38,6 +42,12 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private CacheInvalidator cacheInvalidator;
+
     /**
      * 实现商铺缓存，互斥锁 解决 缓存击穿（高并发且重建时间长的缓存失效，导致大量的请求打到数据库）
      * @param id 商铺id
@@ -45,7 +55,6 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
      */
     @Override
     public Shop queryById(Long id) {
-        CacheClient cacheClient = new CacheClient(stringRedisTemplate);
         // 缓存穿透
         // return cacheClient.queryWithPassThrough(
         //         "shop", id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
@@ -57,18 +66,43 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         // 缓存击穿（逻辑过期）
         // return cacheClient.queryWithLogicalExpire(
         //         "shop", id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+
+        // 缓存击穿（逻辑过期 + 概率提前刷新）
+        // return cacheClient.queryWithEarlyRefresh(
+        //         "shop", id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 更新商铺信息，先更新数据库，再删除缓存（同时广播清除各节点的本地缓存）
+     * @param shop 商铺数据
+     * @return 结果
+     */
+    @Override
+    @Transactional
+    public Result update(Shop shop) {
+        Long id = shop.getId();
+        if (id == null) {
+            return Result.fail("店铺id不能为空");
+        }
+        // 更新数据库
+        updateById(shop);
+        // 事务提交后删除缓存，并延迟再删一次
+        cacheInvalidator.invalidateAfterCommit("shop", id);
+        return Result.ok();
     }
 
     @Override
     public Result queryShopByType(Integer typeId, Integer current, Double x, Double y) {
         // 判断是否需要根据坐标查询
         if (x == null || y == null) {
-            // 不需要坐标查询，根据类型分页查询
+            // 不需要坐标查询，根据类型分页查询id，走 type_id 索引
             Page<Shop> page = lambdaQuery()
+                    .select(Shop::getId)
                     .eq(Shop::getTypeId, typeId)
                     .page(new Page<>(current, DEFAULT_PAGE_SIZE));
-            // 返回数据
-            return Result.ok(page.getRecords());
+            List<Long> ids = page.getRecords().stream().map(Shop::getId).collect(Collectors.toList());
+            // 根据id批量查询缓存，返回数据
+            return Result.ok(new ArrayList<>(queryShopsByIds(ids).values()));
         }
         // 计算分页参数
         int from = (current - 1) * DEFAULT_PAGE_SIZE;
@@ -101,14 +135,28 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
             // 获取距离
             distanceMap.put(shopIdStr, result.getDistance());
         });
-        // 根据id批量查询
-        String idStr = StrUtil.join(",", ids);
-        List<Shop> shopList = lambdaQuery().in(Shop::getId, ids).last("order by field(id, " + idStr + ")").list();
-        // 设置店铺距离
-        for (Shop shop : shopList) {
-            shop.setDistance(distanceMap.get(shop.getId().toString()).getValue());
+        // 根据id批量查询缓存，结果按ids的顺序
+        Map<Long, Shop> shopMap = queryShopsByIds(ids);
+        List<Shop> shopList = new ArrayList<>(shopMap.size());
+        for (Shop shop : shopMap.values()) {
+            // 缓存对象可能来自本地缓存，复制后再设置距离
+            Shop copy = BeanMappers.copy(shop);
+            // 设置店铺距离
+            copy.setDistance(distanceMap.get(shop.getId().toString()).getValue());
+            shopList.add(copy);
         }
         // 返回
         return Result.ok(shopList);
     }
+
+    /**
+     * 根据id批量查询商铺：一次MGET，未命中的一次查库并管道回写缓存
+     * @param ids 商铺id
+     * @return id -> 商铺，按ids的顺序
+     */
+    private Map<Long, Shop> queryShopsByIds(List<Long> ids) {
+        return cacheClient.multiGet("shop", ids, Shop.class,
+                missIds -> listByIds(missIds).stream().collect(Collectors.toMap(Shop::getId, Function.identity())),
+                CACHE_SHOP_TTL, TimeUnit.MINUTES);
+    }
 }
@@ -1,11 +1,21 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
 import com.hmdp.entity.ShopType;
 import com.hmdp.mapper.ShopTypeMapper;
 import com.hmdp.service.IShopTypeService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.Resource;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TYPE_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TYPE_TTL;
+
 /**
  * <p>
  *  服务实现类
@@ -17,4 +27,31 @@ import org.springframework.stereotype.Service;
 @Service
 public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> implements IShopTypeService {
 
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 查询店铺类型列表，优先读缓存
+     * @return 按sort排序的类型列表
+     */
+    @Override
+    public List<ShopType> queryTypeList() {
+        String json = stringRedisTemplate.opsForValue().get(CACHE_SHOP_TYPE_KEY);
+        if (StrUtil.isNotBlank(json)) {
+            return JSONUtil.toList(json, ShopType.class);
+        }
+        return cacheTypeList();
+    }
+
+    /**
+     * 从数据库查询店铺类型列表并写入缓存
+     * @return 按sort排序的类型列表
+     */
+    @Override
+    public List<ShopType> cacheTypeList() {
+        List<ShopType> typeList = query().orderByAsc("sort").list();
+        stringRedisTemplate.opsForValue().set(CACHE_SHOP_TYPE_KEY, JSONUtil.toJsonStr(typeList),
+                CACHE_SHOP_TYPE_TTL, TimeUnit.MINUTES);
+        return typeList;
+    }
 }
@@ -1,9 +1,8 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.bean.BeanUtil;
-import cn.hutool.core.bean.copier.CopyOptions;
 import cn.hutool.core.lang.UUID;
 import cn.hutool.core.util.RandomUtil;
+import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.LoginFormDTO;
 import com.hmdp.dto.Result;
@@ -11,7 +10,12 @@ import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.BeanMappers;
+import com.hmdp.utils.CacheBloomFilter;
+import com.hmdp.utils.LoginCodeLimiter;
+import com.hmdp.utils.LoginSessionCache;
 import com.hmdp.utils.RegexUtils;
+import com.hmdp.utils.SignedSessionToken;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.connection.BitFieldSubCommands;
@@ -23,7 +27,6 @@ import javax.servlet.http.HttpServletRequest;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -46,8 +49,20 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private CacheBloomFilter cacheBloomFilter;
+
+    @Resource
+    private LoginSessionCache loginSessionCache;
+
+    @Resource
+    private SignedSessionToken signedSessionToken;
+
+    @Resource
+    private LoginCodeLimiter loginCodeLimiter;
+
     @Override
-    public Result sendCode(String phone) {
+    public Result sendCode(String phone, HttpServletRequest request) {
         if (RegexUtils.isPhoneInvalid(phone)) {
             // 手机号格式错误
             return Result.fail("手机号格式错误！");
@@ -56,8 +71,10 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         // 生成验证码
         String code = RandomUtil.randomNumbers(6);
 
-        // 保存验证码到 Redis
-        stringRedisTemplate.opsForValue().set(LOGIN_CODE_KEY + phone, code, LOGIN_CODE_TTL, TimeUnit.MINUTES);
+        // 限流，通过后保存验证码到 Redis
+        if (loginCodeLimiter.send(phone, request.getRemoteAddr(), code) != LoginCodeLimiter.OK) {
+            return Result.fail("发送过于频繁，请稍后再试");
+        }
 
         // 发送验证码
         log.debug("发送验证码：{}", code);
@@ -67,19 +84,24 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
     }
 
     @Override
-    public Result login(LoginFormDTO loginForm) {
+    public Result login(LoginFormDTO loginForm, HttpServletRequest request) {
         String phone = loginForm.getPhone();
         if (RegexUtils.isPhoneInvalid(phone)) {
             // 手机号格式错误
             return Result.fail("手机号格式错误！");
         }
 
-        // 校验验证码
-        Object cacheCode = stringRedisTemplate.opsForValue().get(LOGIN_CODE_KEY + phone);
-        String loginCode = loginForm.getCode();
-        if (cacheCode == null || !cacheCode.equals(loginCode)) {
-            // 验证码错误
-            return Result.fail("验证码错误");
+        // 限流并校验验证码，校验通过后验证码作废
+        switch (loginCodeLimiter.verify(phone, request.getRemoteAddr(), loginForm.getCode())) {
+            case LoginCodeLimiter.OK:
+                break;
+            case LoginCodeLimiter.LIMITED:
+                return Result.fail("登录过于频繁，请稍后再试");
+            case LoginCodeLimiter.CODE_INVALIDATED:
+                return Result.fail("验证码错误次数过多，请重新获取");
+            default:
+                // 验证码错误
+                return Result.fail("验证码错误");
         }
 
         // 根据手机号查询用户 select * from tb_user where phone = ?
@@ -90,15 +112,17 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
             user = createUserWithPhone(phone);
         }
 
+        UserDTO userDTO = BeanMappers.toUserDTO(user);
+        if (signedSessionToken.isEnabled()) {
+            // 签名token，不在Redis中保存会话
+            return Result.ok(signedSessionToken.issue(userDTO));
+        }
+
         // 生成token，作为登录令牌
         String token = UUID.fastUUID().toString(true);
 
         // 将User对象转为 Map<String, String>
-        UserDTO userDTO = BeanUtil.copyProperties(user, UserDTO.class);
-        Map<String, Object> userMap = BeanUtil.beanToMap(userDTO, new HashMap<>(),
-                CopyOptions.create()
-                        .setIgnoreNullValue(true)
-                        .setFieldValueEditor((field, value) -> value.toString()));
+        Map<String, String> userMap = BeanMappers.toMap(userDTO);
 
         // 保存用户信息到 Redis
         stringRedisTemplate.opsForHash().putAll(LOGIN_USER_KEY + token, userMap);
@@ -117,14 +141,17 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
             // 用户不存在
             return Result.fail("用户不存在");
         }
-        UserDTO userDTO = BeanUtil.copyProperties(user, UserDTO.class);
+        UserDTO userDTO = BeanMappers.toUserDTO(user);
         return Result.ok(userDTO);
     }
 
     @Override
     public Result logout(HttpServletRequest request) {
         String token = request.getHeader("authorization");
-        stringRedisTemplate.delete(LOGIN_USER_KEY + token);
+        if (StrUtil.isNotBlank(token)) {
+            // 删除会话并通知所有节点清除本地缓存
+            loginSessionCache.remove(token);
+        }
         return Result.ok();
     }
 
@@ -192,6 +219,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
 
         // 保存用户
         save(user);
+        // 加入布隆过滤器
+        cacheBloomFilter.add("user", user.getId());
         return user;
     }
 }
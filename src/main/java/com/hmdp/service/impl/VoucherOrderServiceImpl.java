@@ -1,24 +1,33 @@
 package com.hmdp.service.impl;
 
+import com.hmdp.config.SeckillProperties;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.VoucherOrderDTO;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.hmdp.utils.MqConstants;
+import com.hmdp.utils.OrderPublisher;
 import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SeckillRateLimiter;
+import com.hmdp.utils.SeckillSoldOutGate;
+import com.hmdp.utils.SeckillStock;
+import com.hmdp.utils.SeckillVoucherCache;
 import com.hmdp.utils.UserHolder;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
-import org.springframework.core.io.ClassPathResource;
-import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
+import com.hmdp.utils.UserOrderCache;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Resource;
 import java.time.LocalDateTime;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 
 
@@ -40,20 +49,30 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     private RedisIdWorker redisIdWorker;
 
     @Resource
-    private StringRedisTemplate stringRedisTemplate;
+    private OrderPublisher orderPublisher;
 
     @Resource
-    private RabbitTemplate rabbitTemplate;
+    private SeckillSoldOutGate seckillSoldOutGate;
+
+    @Resource
+    private SeckillVoucherCache seckillVoucherCache;
+
+    @Resource
+    private SeckillStock seckillStock;
+
+    @Resource
+    private SeckillProperties seckillProperties;
+
+    @Resource
+    private UserOrderCache userOrderCache;
+
+    @Resource
+    private SeckillRateLimiter seckillRateLimiter;
 
     /**
-     * 秒杀Lua脚本（判断库存，一人一单）
+     * 秒杀脚本返回值对应的失败原因
      */
-    private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
-    static {
-        SECKILL_SCRIPT = new DefaultRedisScript<>();
-        SECKILL_SCRIPT.setResultType(Long.class);
-        SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
-    }
+    private static final String[] SECKILL_ERRORS = {"", "库存不足", "不能重复下单", "秒杀券不存在", "秒杀尚未开始", "秒杀已经结束"};
 
     /**
      * 秒杀优惠券
@@ -62,7 +81,12 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
      */
     @Override
     public Result seckillVoucher(Long voucherId) {
-        SeckillVoucher voucher = seckillVoucherService.getById(voucherId);
+        if (seckillSoldOutGate.isSoldOut(voucherId)) {
+            // 本节点已知售罄，直接拒绝
+            return Result.fail("库存不足");
+        }
+        // 从缓存查询秒杀时间窗口，不查数据库
+        SeckillVoucher voucher = seckillVoucherCache.get(voucherId);
         if (voucher == null) {
             // 秒杀券不存在
             return Result.fail("秒杀券不存在");
@@ -77,28 +101,137 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         }
         // 获取用户id
         Long userId = UserHolder.getUser().getId();
-        // 执行Lua脚本
-        Long result = stringRedisTemplate.execute(SECKILL_SCRIPT,
-                Collections.emptyList(),
-                userId.toString(),
-                voucherId.toString());
-        assert result != null;
-        int r = result.intValue();
-        if (r != 0) {
-            // 不为0，秒杀失败
-            return Result.fail(r == 1 ? "库存不足" : "不能重复下单");
+        if (!seckillRateLimiter.tryAcquire(voucherId, userId)) {
+            // 限流，不访问Redis库存
+            return Result.fail("活动太火爆，请稍后再试");
         }
-        // 创建订单
-        long orderId = redisIdWorker.nextId("order");
+        boolean useStream = "stream".equals(seckillProperties.getOrderPipeline());
+        // 执行Lua脚本，判断秒杀时间、库存、一人一单；Stream下单时脚本同时生成订单id并写入Stream
+        long r = useStream ? seckillStock.deductAndEnqueue(voucher, userId) : seckillStock.deduct(voucher, userId);
+        if (r == 1) {
+            // 库存不足，标记售罄并通知其他节点
+            seckillSoldOutGate.markSoldOut(voucherId);
+        }
+        if (r > 0 && r < SECKILL_ERRORS.length) {
+            // 错误码，秒杀失败
+            return Result.fail(SECKILL_ERRORS[(int) r]);
+        }
+        // 创建订单，Stream下单时使用脚本生成的订单id
+        long orderId = useStream ? r : redisIdWorker.nextId("order");
         VoucherOrder voucherOrder = new VoucherOrder();
         voucherOrder.setUserId(userId);
         voucherOrder.setId(orderId);
         voucherOrder.setVoucherId(voucherId);
-        // 发送订单到RabbitMQ队列中
-        rabbitTemplate.convertAndSend(MqConstants.ORDER_TOPIC, MqConstants.ORDER_ADD_KEY, voucherOrder);
+        // 记录到用户订单缓存，等待异步保存
+        userOrderCache.pending(voucherOrder);
+        if (!useStream) {
+            // 发送订单到RabbitMQ队列中，异步发送，不等待Broker
+            orderPublisher.publish(voucherOrder);
+        }
         // 返回订单id
         return Result.ok(orderId);
     }
 
+    /**
+     * 查询当前用户的订单状态，先查用户订单缓存，没有再按主键查数据库
+     * @param orderId 订单id
+     * @return 订单摘要，state 为 pending、persisted、failed
+     */
+    @Override
+    public Result queryOrder(Long orderId) {
+        Long userId = UserHolder.getUser().getId();
+        VoucherOrderDTO order = userOrderCache.get(userId, orderId);
+        if (order != null) {
+            return Result.ok(order);
+        }
+        VoucherOrder voucherOrder = getById(orderId);
+        if (voucherOrder == null || !userId.equals(voucherOrder.getUserId())) {
+            return Result.fail("订单不存在");
+        }
+        userOrderCache.persisted(Collections.singletonList(voucherOrder));
+        return Result.ok(userOrderCache.get(userId, orderId));
+    }
 
+    /**
+     * 查询当前用户的全部订单，只有用户订单缓存未加载时才按 user_id 查询数据库
+     * @return 订单摘要列表，按下单时间倒序
+     */
+    @Override
+    public Result queryMyOrders() {
+        Long userId = UserHolder.getUser().getId();
+        List<VoucherOrderDTO> orders = userOrderCache.list(userId);
+        if (orders == null) {
+            // 缓存未加载，从数据库加载一次，缓存中已有的 pending、failed 订单保留
+            userOrderCache.load(userId, query().eq("user_id", userId).list());
+            orders = userOrderCache.list(userId);
+        }
+        return Result.ok(orders);
+    }
+
+    /**
+     * 保存单个订单：扣减库存 + 插入订单
+     * @param voucherOrder 订单
+     */
+    @Override
+    @Transactional
+    public void createOrder(VoucherOrder voucherOrder) {
+        // 重复投递的消息：订单已保存，不再扣库存，否则库存扣完后会扣减失败进入异常队列
+        if (getById(voucherOrder.getId()) != null) {
+            userOrderCache.persisted(Collections.singletonList(voucherOrder));
+            return;
+        }
+        // 扣库存
+        boolean isSuccess = seckillVoucherService.lambdaUpdate()
+                .setSql("stock = stock - 1")
+                .eq(SeckillVoucher::getVoucherId, voucherOrder.getVoucherId())
+                .gt(SeckillVoucher::getStock, 0)  // 乐观锁
+                .update();
+        if (!isSuccess) {
+            throw new RuntimeException("库存扣减失败");
+        }
+        // 保存订单信息
+        save(voucherOrder);
+        markPersistedAfterCommit(Collections.singletonList(voucherOrder));
+    }
+
+    /**
+     * 批量保存订单：每个优惠券一条 stock = stock - k，所有订单一条多行INSERT，任一失败整批回滚
+     * @param voucherOrders 订单列表
+     */
+    @Override
+    @Transactional
+    public void createOrders(List<VoucherOrder> voucherOrders) {
+        if (voucherOrders.isEmpty()) {
+            return;
+        }
+        // 按优惠券汇总扣减数量
+        Map<Long, Long> counts = voucherOrders.stream()
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId, Collectors.counting()));
+        counts.forEach((voucherId, count) -> {
+            boolean isSuccess = seckillVoucherService.lambdaUpdate()
+                    .setSql("stock = stock - " + count)
+                    .eq(SeckillVoucher::getVoucherId, voucherId)
+                    .ge(SeckillVoucher::getStock, count)  // 乐观锁
+                    .update();
+            if (!isSuccess) {
+                throw new RuntimeException("库存扣减失败");
+            }
+        });
+        // 一条多行INSERT保存订单
+        getBaseMapper().insertBatch(voucherOrders);
+        markPersistedAfterCommit(voucherOrders);
+    }
+
+    /**
+     * 事务提交后把订单在用户订单缓存中标记为已保存，回滚时不标记
+     * @param voucherOrders 订单
+     */
+    private void markPersistedAfterCommit(List<VoucherOrder> voucherOrders) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                userOrderCache.persisted(voucherOrders);
+            }
+        });
+    }
 }
@@ -7,15 +7,17 @@ import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import com.hmdp.utils.SeckillSoldOutGate;
+import com.hmdp.utils.SeckillStock;
+import com.hmdp.utils.SeckillVoucherCache;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Resource;
 import java.util.List;
 
-import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
-
 /**
  * <p>
  *  服务实现类
@@ -31,7 +33,13 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
     private ISeckillVoucherService seckillVoucherService;
 
     @Resource
-    private StringRedisTemplate stringRedisTemplate;
+    private SeckillSoldOutGate seckillSoldOutGate;
+
+    @Resource
+    private SeckillVoucherCache seckillVoucherCache;
+
+    @Resource
+    private SeckillStock seckillStock;
 
     @Override
     public Result queryVoucherOfShop(Long shopId) {
@@ -52,8 +60,45 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setStock(voucher.getStock());
         seckillVoucher.setBeginTime(voucher.getBeginTime());
         seckillVoucher.setEndTime(voucher.getEndTime());
+        // 分片数保存到数据库，Redis中的时间窗口丢失后仍能找到分片的库存key
+        int shards = voucher.getStockShards() == null ? 1 : voucher.getStockShards();
+        seckillVoucher.setStockShards(shards);
         seckillVoucherService.save(seckillVoucher);
-        // 保存库存到Redis
-        stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY + voucher.getId(), voucher.getStock().toString());
+        // 保存库存到Redis，指定了分片数时拆分到多个key
+        seckillStock.init(voucher.getId(), voucher.getStock(), shards);
+        // 保存秒杀时间窗口到Redis和本地缓存
+        seckillVoucherCache.put(seckillVoucher);
+    }
+
+    /**
+     * 补充秒杀券库存，提交后增加Redis库存并清除各节点的售罄标记
+     * @param voucherId 优惠券id
+     * @param count 补充数量
+     * @return 结果
+     */
+    @Override
+    @Transactional
+    public Result addSeckillStock(Long voucherId, Integer count) {
+        if (count == null || count <= 0) {
+            return Result.fail("补充数量必须大于0");
+        }
+        boolean isSuccess = seckillVoucherService.lambdaUpdate()
+                .setSql("stock = stock + " + count)
+                .eq(SeckillVoucher::getVoucherId, voucherId)
+                .update();
+        if (!isSuccess) {
+            return Result.fail("秒杀券不存在");
+        }
+        SeckillVoucher voucher = seckillVoucherCache.get(voucherId);
+        int shards = voucher == null || voucher.getStockShards() == null ? 1 : voucher.getStockShards();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                // 先增加Redis库存，再清除售罄标记
+                seckillStock.add(voucherId, count, shards);
+                seckillSoldOutGate.reset(voucherId);
+            }
+        });
+        return Result.ok();
     }
 }
@@ -0,0 +1,111 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.User;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 手写的对象转换，替代热点路径上 BeanUtil 的反射拷贝（copyProperties、beanToMap、fillBeanWithMap）。
+ * 实体或DTO增加字段时需要同步修改这里
+ */
+public class BeanMappers {
+
+    private BeanMappers() {
+    }
+
+    /**
+     * User -> UserDTO
+     * @param user 用户
+     * @return 用户DTO，user为null返回null
+     */
+    public static UserDTO toUserDTO(User user) {
+        if (user == null) {
+            return null;
+        }
+        UserDTO userDTO = new UserDTO();
+        userDTO.setId(user.getId());
+        userDTO.setNickName(user.getNickName());
+        userDTO.setIcon(user.getIcon());
+        return userDTO;
+    }
+
+    /**
+     * UserDTO -> 用于保存为Redis hash的 Map，忽略null字段，值转为字符串
+     * @param userDTO 用户DTO
+     * @return 字段名 -> 字符串值
+     */
+    public static Map<String, String> toMap(UserDTO userDTO) {
+        Map<String, String> map = new HashMap<>(4);
+        if (userDTO.getId() != null) {
+            map.put("id", userDTO.getId().toString());
+        }
+        if (userDTO.getNickName() != null) {
+            map.put("nickName", userDTO.getNickName());
+        }
+        if (userDTO.getIcon() != null) {
+            map.put("icon", userDTO.getIcon());
+        }
+        return map;
+    }
+
+    /**
+     * Lua脚本返回的 HGETALL 结果 -> UserDTO，字段、值交替排列
+     * @param fields 字段, 值, 字段, 值...
+     * @return 用户DTO
+     */
+    public static UserDTO toUserDTO(List<?> fields) {
+        UserDTO userDTO = new UserDTO();
+        for (int i = 0; i + 1 < fields.size(); i += 2) {
+            setUserField(userDTO, fields.get(i).toString(), fields.get(i + 1));
+        }
+        return userDTO;
+    }
+
+    /**
+     * 复制店铺，浅拷贝
+     * @param shop 店铺
+     * @return 新的店铺对象
+     */
+    public static Shop copy(Shop shop) {
+        return new Shop()
+                .setId(shop.getId())
+                .setName(shop.getName())
+                .setTypeId(shop.getTypeId())
+                .setImages(shop.getImages())
+                .setArea(shop.getArea())
+                .setAddress(shop.getAddress())
+                .setX(shop.getX())
+                .setY(shop.getY())
+                .setAvgPrice(shop.getAvgPrice())
+                .setSold(shop.getSold())
+                .setComments(shop.getComments())
+                .setScore(shop.getScore())
+                .setOpenHours(shop.getOpenHours())
+                .setCreateTime(shop.getCreateTime())
+                .setUpdateTime(shop.getUpdateTime())
+                .setDistance(shop.getDistance());
+    }
+
+    private static void setUserField(UserDTO userDTO, String field, Object value) {
+        if (value == null) {
+            return;
+        }
+        switch (field) {
+            case "id":
+                userDTO.setId(Long.valueOf(value.toString()));
+                break;
+            case "nickName":
+                userDTO.setNickName(value.toString());
+                break;
+            case "icon":
+                userDTO.setIcon(value.toString());
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.Shop;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 紧凑二进制编码，按固定字段顺序写入，不保存字段名
+ * 格式：魔数(1) + 标志位(1) + 类型编号(1) + [逻辑过期时间(8) + 重建耗时(8)] + 数据
+ * 逻辑过期时间在固定位置，读取时只解析一次；未注册类型的数据退化为JSON；非本格式的数据（旧的JSON缓存）交给JSON编码解析。
+ * null（如逻辑过期缓存重建时数据已删除）编码为类型编号0、没有数据部分
+ */
+@Component
+public class BinaryCacheCodec implements CacheCodec {
+
+    private static final byte MAGIC = (byte) 0xB1;
+
+    /**
+     * 标志位：逻辑过期缓存，头部带过期时间
+     */
+    private static final byte FLAG_LOGICAL = 1;
+
+    /**
+     * 标志位：数据部分为JSON
+     */
+    private static final byte FLAG_JSON = 2;
+
+    private final JsonCacheCodec jsonCodec = new JsonCacheCodec();
+
+    /**
+     * null 的类型编号，注册的类型从1开始
+     */
+    private static final byte NULL_SCHEMA_ID = 0;
+
+    /**
+     * 类型编号 -> 结构
+     */
+    private final Map<Byte, Schema<?>> schemasById = new HashMap<>();
+
+    /**
+     * 类型 -> 类型编号
+     */
+    private final Map<Class<?>, Byte> idsByClass = new HashMap<>();
+
+    public BinaryCacheCodec() {
+        register((byte) 1, Shop.class, new ShopSchema());
+        register((byte) 2, Blog.class, new BlogSchema());
+        register((byte) 3, UserDTO.class, new UserDTOSchema());
+    }
+
+    private <T> void register(byte id, Class<T> clazz, Schema<T> schema) {
+        schemasById.put(id, schema);
+        idsByClass.put(clazz, id);
+    }
+
+    @Override
+    public String name() {
+        return "binary";
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        return write(value, false, 0, null);
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> clazz) {
+        if (bytes[0] != MAGIC) {
+            return jsonCodec.decode(bytes, clazz);
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            in.readByte();
+            byte flags = in.readByte();
+            byte schemaId = in.readByte();
+            if ((flags & FLAG_LOGICAL) != 0) {
+                in.readLong();
+                in.readLong();
+            }
+            return readData(in, flags, schemaId, bytes, clazz);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public byte[] encodeLogical(Object value, long expireMillis, Long delta) {
+        return write(value, true, expireMillis, delta);
+    }
+
+    @Override
+    public <T> LogicalValue<T> decodeLogical(byte[] bytes, Class<T> clazz) {
+        if (bytes[0] != MAGIC) {
+            return jsonCodec.decodeLogical(bytes, clazz);
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            in.readByte();
+            byte flags = in.readByte();
+            byte schemaId = in.readByte();
+            long expireMillis = in.readLong();
+            long delta = in.readLong();
+            return new LogicalValue<>(readData(in, flags, schemaId, bytes, clazz), expireMillis, delta);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] write(Object value, boolean logical, long expireMillis, Long delta) {
+        Byte schemaId = value == null ? Byte.valueOf(NULL_SCHEMA_ID) : idsByClass.get(value.getClass());
+        byte flags = logical ? FLAG_LOGICAL : 0;
+        if (schemaId == null) {
+            flags |= FLAG_JSON;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(MAGIC);
+            out.writeByte(flags);
+            out.writeByte(schemaId == null ? 0 : schemaId);
+            if (logical) {
+                out.writeLong(expireMillis);
+                out.writeLong(delta == null ? 0 : delta);
+            }
+            if (schemaId == null) {
+                out.write(jsonCodec.encode(value));
+            } else if (schemaId != NULL_SCHEMA_ID) {
+                ((Schema<Object>) schemasById.get(schemaId)).write(value, out);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private <T> T readData(DataInputStream in, byte flags, byte schemaId, byte[] bytes, Class<T> clazz)
+            throws IOException {
+        if ((flags & FLAG_JSON) != 0) {
+            int headerLength = (flags & FLAG_LOGICAL) != 0 ? 19 : 3;
+            byte[] json = new byte[bytes.length - headerLength];
+            System.arraycopy(bytes, headerLength, json, 0, json.length);
+            return jsonCodec.decode(json, clazz);
+        }
+        if (schemaId == NULL_SCHEMA_ID) {
+            return null;
+        }
+        return clazz.cast(schemasById.get(schemaId).read(in));
+    }
+
+    /**
+     * 单个类型的二进制结构
+     */
+    private interface Schema<T> {
+        void write(T value, DataOutputStream out) throws IOException;
+
+        T read(DataInputStream in) throws IOException;
+    }
+
+    private static class ShopSchema implements Schema<Shop> {
+        @Override
+        public void write(Shop shop, DataOutputStream out) throws IOException {
+            writeLong(out, shop.getId());
+            writeString(out, shop.getName());
+            writeLong(out, shop.getTypeId());
+            writeString(out, shop.getImages());
+            writeString(out, shop.getArea());
+            writeString(out, shop.getAddress());
+            writeDouble(out, shop.getX());
+            writeDouble(out, shop.getY());
+            writeLong(out, shop.getAvgPrice());
+            writeInt(out, shop.getSold());
+            writeInt(out, shop.getComments());
+            writeInt(out, shop.getScore());
+            writeString(out, shop.getOpenHours());
+            writeTime(out, shop.getCreateTime());
+            writeTime(out, shop.getUpdateTime());
+            writeDouble(out, shop.getDistance());
+        }
+
+        @Override
+        public Shop read(DataInputStream in) throws IOException {
+            return new Shop()
+                    .setId(readLong(in))
+                    .setName(readString(in))
+                    .setTypeId(readLong(in))
+                    .setImages(readString(in))
+                    .setArea(readString(in))
+                    .setAddress(readString(in))
+                    .setX(readDouble(in))
+                    .setY(readDouble(in))
+                    .setAvgPrice(readLong(in))
+                    .setSold(readInt(in))
+                    .setComments(readInt(in))
+                    .setScore(readInt(in))
+                    .setOpenHours(readString(in))
+                    .setCreateTime(readTime(in))
+                    .setUpdateTime(readTime(in))
+                    .setDistance(readDouble(in));
+        }
+    }
+
+    private static class BlogSchema implements Schema<Blog> {
+        @Override
+        public void write(Blog blog, DataOutputStream out) throws IOException {
+            writeLong(out, blog.getId());
+            writeLong(out, blog.getShopId());
+            writeLong(out, blog.getUserId());
+            writeString(out, blog.getIcon());
+            writeString(out, blog.getName());
+            writeBoolean(out, blog.getIsLike());
+            writeString(out, blog.getTitle());
+            writeString(out, blog.getImages());
+            writeString(out, blog.getContent());
+            writeInt(out, blog.getLiked());
+            writeInt(out, blog.getComments());
+            writeTime(out, blog.getCreateTime());
+            writeTime(out, blog.getUpdateTime());
+        }
+
+        @Override
+        public Blog read(DataInputStream in) throws IOException {
+            return new Blog()
+                    .setId(readLong(in))
+                    .setShopId(readLong(in))
+                    .setUserId(readLong(in))
+                    .setIcon(readString(in))
+                    .setName(readString(in))
+                    .setIsLike(readBoolean(in))
+                    .setTitle(readString(in))
+                    .setImages(readString(in))
+                    .setContent(readString(in))
+                    .setLiked(readInt(in))
+                    .setComments(readInt(in))
+                    .setCreateTime(readTime(in))
+                    .setUpdateTime(readTime(in));
+        }
+    }
+
+    private static class UserDTOSchema implements Schema<UserDTO> {
+        @Override
+        public void write(UserDTO user, DataOutputStream out) throws IOException {
+            writeLong(out, user.getId());
+            writeString(out, user.getNickName());
+            writeString(out, user.getIcon());
+        }
+
+        @Override
+        public UserDTO read(DataInputStream in) throws IOException {
+            UserDTO user = new UserDTO();
+            user.setId(readLong(in));
+            user.setNickName(readString(in));
+            user.setIcon(readString(in));
+            return user;
+        }
+    }
+
+    // 以下为可空字段的读写，每个字段前1字节标记是否为null
+
+    private static void writeLong(DataOutputStream out, Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+
+    private static Long readLong(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+
+    private static void writeInt(DataOutputStream out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static Integer readInt(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readInt() : null;
+    }
+
+    private static void writeDouble(DataOutputStream out, Double value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeDouble(value);
+        }
+    }
+
+    private static Double readDouble(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readDouble() : null;
+    }
+
+    private static void writeBoolean(DataOutputStream out, Boolean value) throws IOException {
+        // 0：null，1：false，2：true
+        out.writeByte(value == null ? 0 : value ? 2 : 1);
+    }
+
+    private static Boolean readBoolean(DataInputStream in) throws IOException {
+        byte b = in.readByte();
+        return b == 0 ? null : b == 2;
+    }
+
+    private static void writeTime(DataOutputStream out, LocalDateTime value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value.toInstant(ZoneOffset.UTC).toEpochMilli());
+        }
+    }
+
+    private static LocalDateTime readTime(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        long millis = in.readLong();
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000), Math.floorMod(millis, 1000) * 1000000,
+                ZoneOffset.UTC);
+    }
+
+    /**
+     * 字符串：变长长度（0表示null，否则为字节数+1）+ UTF-8字节
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = readVarInt(in);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
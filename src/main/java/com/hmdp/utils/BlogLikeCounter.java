@@ -0,0 +1,296 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.BlogProperties;
+import com.hmdp.entity.Blog;
+import com.hmdp.mapper.BlogMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_COUNT_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_DIRTY_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_FLUSHING_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
+import static com.hmdp.utils.RedisConstants.LOCK_BLOG_LIKED_FLUSH_KEY;
+
+/**
+ * 博客点赞：点赞用户集合 blog:liked:{id} 和点赞数 blog:liked:count:{id} 以Redis为准，点赞只访问Redis，
+ * 后台定时把有变化的博客的点赞数批量写回 tb_blog.liked，同一博客在一个周期内的多次点赞合并为一次写入。
+ * 写回使用点赞数的绝对值而不是增量，重复写入结果不变：
+ * 1. 点赞时博客id加入待刷新集合 blog:liked:dirty；
+ * 2. 刷新时一次取出一批，连同当前点赞数记入刷新中hash blog:liked:flushing，再一条 UPDATE ... CASE 写入数据库；
+ * 3. 提交后删除刷新中记录；进程在2、3之间宕机时记录保留，由恢复任务按Redis中最新的点赞数重新写入。
+ * 写回和恢复持有分布式锁，同一时刻只有一个节点在写：多个节点并发写入绝对值时，先取出的旧值可能后提交，覆盖新值
+ */
+@Slf4j
+@Component
+public class BlogLikeCounter {
+
+    private static final DefaultRedisScript<List<Object>> TOGGLE_SCRIPT;
+    private static final DefaultRedisScript<List<Object>> TAKE_SCRIPT;
+    private static final DefaultRedisScript<Long> DONE_SCRIPT;
+    static {
+        // 脚本返回多条批量回复，Class对象无法携带泛型参数
+        @SuppressWarnings("unchecked")
+        Class<List<Object>> listType = (Class<List<Object>>) (Class<?>) List.class;
+        TOGGLE_SCRIPT = new DefaultRedisScript<>();
+        TOGGLE_SCRIPT.setResultType(listType);
+        TOGGLE_SCRIPT.setLocation(new ClassPathResource("like_toggle.lua"));
+        TAKE_SCRIPT = new DefaultRedisScript<>();
+        TAKE_SCRIPT.setResultType(listType);
+        TAKE_SCRIPT.setLocation(new ClassPathResource("like_take.lua"));
+        DONE_SCRIPT = new DefaultRedisScript<>();
+        DONE_SCRIPT.setResultType(Long.class);
+        DONE_SCRIPT.setLocation(new ClassPathResource("like_done.lua"));
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final BlogMapper blogMapper;
+
+    private final BlogProperties.Like properties;
+
+    /**
+     * 写回、恢复的锁，Redisson看门狗续期，节点宕机后锁自动释放
+     */
+    private final RLock flushLock;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            r -> new Thread(r, "blog-like-flusher"));
+
+    private final LongAdder toggles = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    /**
+     * 写回数据库的 UPDATE 语句数
+     */
+    private final LongAdder updates = new LongAdder();
+    /**
+     * 写回数据库的博客数
+     */
+    private final LongAdder flushedBlogs = new LongAdder();
+    private final LongAdder recovered = new LongAdder();
+
+    public BlogLikeCounter(StringRedisTemplate stringRedisTemplate, BlogMapper blogMapper,
+                           BlogProperties blogProperties, RedissonClient redissonClient) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.blogMapper = blogMapper;
+        this.properties = blogProperties.getLike();
+        this.flushLock = redissonClient.getLock(LOCK_BLOG_LIKED_FLUSH_KEY);
+    }
+
+    @PostConstruct
+    private void init() {
+        long interval = properties.getFlushInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        // 启动时先恢复一次
+        long recoverInterval = properties.getRecoverInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::recoverQuietly, 0, recoverInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 点赞｜取消点赞
+     * @param blogId 博客id
+     * @param userId 用户id
+     * @return 操作后是否点赞，博客不存在返回null
+     */
+    public Boolean toggle(Long blogId, Long userId) {
+        List<String> keys = Arrays.asList(BLOG_LIKED_KEY + blogId, BLOG_LIKED_COUNT_KEY + blogId, BLOG_LIKED_DIRTY_KEY);
+        String[] args = {userId.toString(), String.valueOf(System.currentTimeMillis()), blogId.toString()};
+        List<Object> result = stringRedisTemplate.execute(TOGGLE_SCRIPT, keys, (Object[]) args);
+        if (result == null || result.isEmpty()) {
+            // 点赞数未加载，从数据库加载后重试；并发加载时只有第一个生效
+            Blog blog = blogMapper.selectById(blogId);
+            if (blog == null) {
+                return null;
+            }
+            loads.increment();
+            stringRedisTemplate.opsForValue().setIfAbsent(BLOG_LIKED_COUNT_KEY + blogId,
+                    String.valueOf(blog.getLiked() == null ? 0 : blog.getLiked()));
+            result = stringRedisTemplate.execute(TOGGLE_SCRIPT, keys, (Object[]) args);
+            if (result == null || result.isEmpty()) {
+                return null;
+            }
+        }
+        toggles.increment();
+        return ((Number) result.get(0)).intValue() == 1;
+    }
+
+    /**
+     * 用Redis中的点赞数覆盖博客的点赞数，一次MGET；Redis中没有的保留数据库的值
+     * @param blogs 博客集合
+     */
+    public void fillLiked(List<Blog> blogs) {
+        if (blogs.isEmpty()) {
+            return;
+        }
+        List<String> counts = stringRedisTemplate.opsForValue().multiGet(blogs.stream()
+                .map(blog -> BLOG_LIKED_COUNT_KEY + blog.getId())
+                .collect(Collectors.toList()));
+        if (counts == null) {
+            return;
+        }
+        for (int i = 0; i < blogs.size(); i++) {
+            if (counts.get(i) != null) {
+                blogs.get(i).setLiked(Integer.valueOf(counts.get(i)));
+            }
+        }
+    }
+
+    /**
+     * 把待刷新的点赞数写回数据库，直到没有待刷新的博客；其他节点正在写回时等待其完成
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            flushAll();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushAll() {
+        while (true) {
+            List<Object> taken = stringRedisTemplate.execute(TAKE_SCRIPT,
+                    Arrays.asList(BLOG_LIKED_DIRTY_KEY, BLOG_LIKED_FLUSHING_KEY),
+                    String.valueOf(properties.getBatchSize()), BLOG_LIKED_COUNT_KEY);
+            if (taken == null || taken.isEmpty()) {
+                return;
+            }
+            List<String> pairs = new ArrayList<>(taken.size());
+            for (Object obj : taken) {
+                pairs.add(obj.toString());
+            }
+            write(pairs);
+        }
+    }
+
+    /**
+     * 点赞统计
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("toggles", toggles.sum());
+        stats.put("loads", loads.sum());
+        stats.put("updates", updates.sum());
+        stats.put("flushedBlogs", flushedBlogs.sum());
+        stats.put("recovered", recovered.sum());
+        Long pending = stringRedisTemplate.opsForSet().size(BLOG_LIKED_DIRTY_KEY);
+        stats.put("pending", pending == null ? 0 : pending);
+        return stats;
+    }
+
+    /**
+     * 写入数据库，提交后删除刷新中记录
+     * @param pairs 博客id, 点赞数, 博客id, 点赞数...
+     */
+    private void write(List<String> pairs) {
+        List<Blog> blogs = new ArrayList<>(pairs.size() / 2);
+        for (int i = 0; i < pairs.size(); i += 2) {
+            blogs.add(new Blog().setId(Long.valueOf(pairs.get(i))).setLiked(Integer.valueOf(pairs.get(i + 1))));
+        }
+        blogMapper.updateLikedBatch(blogs);
+        updates.increment();
+        flushedBlogs.add(blogs.size());
+        stringRedisTemplate.execute(DONE_SCRIPT, Collections.singletonList(BLOG_LIKED_FLUSHING_KEY), pairs.toArray());
+    }
+
+    /**
+     * 重新写入刷新中hash里的记录：已取出但未确认提交，是本节点或其他节点写回失败或宕机遗留，
+     * 按Redis中最新的点赞数写入，重复写入不影响结果
+     */
+    private void recover() {
+        Map<Object, Object> flushing = stringRedisTemplate.opsForHash().entries(BLOG_LIKED_FLUSHING_KEY);
+        if (flushing.isEmpty()) {
+            return;
+        }
+        List<String> ids = new ArrayList<>(flushing.size());
+        flushing.keySet().forEach(id -> ids.add(id.toString()));
+        for (int from = 0; from < ids.size(); from += properties.getBatchSize()) {
+            List<String> batch = ids.subList(from, Math.min(from + properties.getBatchSize(), ids.size()));
+            List<String> counts = stringRedisTemplate.opsForValue().multiGet(batch.stream()
+                    .map(id -> BLOG_LIKED_COUNT_KEY + id)
+                    .collect(Collectors.toList()));
+            List<Blog> blogs = new ArrayList<>(batch.size());
+            // 删除时与取出时的值比较，期间又被其他节点取走的记录保留
+            List<String> taken = new ArrayList<>(batch.size() * 2);
+            for (int i = 0; i < batch.size(); i++) {
+                String id = batch.get(i);
+                String count = counts == null ? null : counts.get(i);
+                if (count == null) {
+                    // 点赞数已不存在，无法写入，只删除记录
+                    stringRedisTemplate.opsForHash().delete(BLOG_LIKED_FLUSHING_KEY, id);
+                    continue;
+                }
+                blogs.add(new Blog().setId(Long.valueOf(id)).setLiked(Integer.valueOf(count)));
+                taken.add(id);
+                taken.add(flushing.get(id).toString());
+            }
+            if (blogs.isEmpty()) {
+                continue;
+            }
+            blogMapper.updateLikedBatch(blogs);
+            updates.increment();
+            recovered.add(blogs.size());
+            stringRedisTemplate.execute(DONE_SCRIPT, Collections.singletonList(BLOG_LIKED_FLUSHING_KEY), taken.toArray());
+        }
+    }
+
+    /**
+     * 定时写回，其他节点持有锁时跳过本次，待刷新的博客由持有锁的节点写回
+     */
+    private void flushQuietly() {
+        if (!flushLock.tryLock()) {
+            return;
+        }
+        try {
+            flushAll();
+        } catch (Exception e) {
+            // 已取出的记录留在刷新中hash，由恢复任务重新写入
+            log.error("点赞数写回数据库异常", e);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void recoverQuietly() {
+        if (!flushLock.tryLock()) {
+            return;
+        }
+        try {
+            recover();
+        } catch (Exception e) {
+            log.error("恢复未写回的点赞数异常", e);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+        // 停机前把剩余的点赞数写回
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("点赞数写回数据库异常", e);
+        }
+    }
+}
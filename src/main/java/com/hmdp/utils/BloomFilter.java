@@ -0,0 +1,103 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于本地位图的布隆过滤器，元素为long类型的id，线程安全
+ */
+public class BloomFilter {
+
+    /**
+     * 位图，每个long存64位
+     */
+    private final AtomicLongArray bits;
+
+    /**
+     * 位图总位数
+     */
+    private final long numBits;
+
+    /**
+     * 哈希函数个数
+     */
+    private final int numHashes;
+
+    /**
+     * 已插入的元素个数（近似，重复插入也会计数）
+     */
+    private final LongAdder insertions = new LongAdder();
+
+    /**
+     * @param expectedInsertions 预计元素个数
+     * @param falseProbability 期望误判率
+     */
+    public BloomFilter(long expectedInsertions, double falseProbability) {
+        // m = -n * ln(p) / (ln2)^2
+        long m = (long) (-expectedInsertions * Math.log(falseProbability) / (Math.log(2) * Math.log(2)));
+        this.numBits = Math.max(64, m);
+        // k = m / n * ln2
+        this.numHashes = Math.max(1, (int) Math.round((double) numBits / expectedInsertions * Math.log(2)));
+        this.bits = new AtomicLongArray((int) ((numBits + 63) >>> 6));
+    }
+
+    public void add(long id) {
+        long hash = mix(id);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= numHashes; i++) {
+            long index = position(h1 + i * h2);
+            setBit(index);
+        }
+        insertions.increment();
+    }
+
+    public boolean mightContain(long id) {
+        long hash = mix(id);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= numHashes; i++) {
+            long index = position(h1 + i * h2);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 按当前插入数估算的理论误判率 (1 - e^(-kn/m))^k
+     */
+    public double expectedFalseProbability() {
+        return Math.pow(1 - Math.exp(-numHashes * (double) insertions.sum() / numBits), numHashes);
+    }
+
+    private long position(int combinedHash) {
+        // 取反保证非负
+        return (combinedHash < 0 ? ~combinedHash : combinedHash) % numBits;
+    }
+
+    private void setBit(long index) {
+        int i = (int) (index >>> 6);
+        long mask = 1L << index;
+        long old;
+        do {
+            old = bits.get(i);
+            if ((old & mask) != 0) {
+                return;
+            }
+        } while (!bits.compareAndSet(i, old, old | mask));
+    }
+
+    /**
+     * 64位混淆函数（MurmurHash3 fmix64），使连续id分布均匀
+     */
+    private static long mix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
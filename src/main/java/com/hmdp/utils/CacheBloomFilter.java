@@ -0,0 +1,192 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.CacheProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.BLOOM_ADD_CHANNEL;
+import static com.hmdp.utils.RedisConstants.BLOOM_RECENT_KEY;
+
+/**
+ * 按缓存前缀（业务名）维护的布隆过滤器，解决缓存穿透。
+ * 位图在每个节点本地，判断不走网络；启动时由数据库全量加载，新增数据通过Redis广播同步到所有节点。
+ * 广播可能丢失，新增id同时记入zset bloom:recent:{前缀}（分数为写入时间），各节点定时拉取上次同步以来的新增id，
+ * 丢失的广播最多在一个同步间隔后补上；启动加载期间新增的id也由此补上
+ */
+@Slf4j
+@Component
+public class CacheBloomFilter {
+
+    /**
+     * 节点间的时钟误差，补偿同步时多拉取这段时间
+     */
+    private static final long CLOCK_SKEW_MILLIS = 60000;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 配置了布隆过滤器的前缀，只在构造时写入
+     */
+    private final Map<String, BloomFilter> filters = new HashMap<>();
+
+    /**
+     * 已完成加载的前缀，加载完成前不拦截，避免误杀
+     */
+    private final Set<String> readyPrefixes = ConcurrentHashMap.newKeySet();
+
+    private final CacheProperties.BloomSync syncProperties;
+
+    /**
+     * 上次补偿同步的时间，0表示拉取保留期内的全部新增id
+     */
+    private long lastSyncTime;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "bloom-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public CacheBloomFilter(StringRedisTemplate stringRedisTemplate, CacheProperties cacheProperties,
+                            RedisMessageListenerContainer listenerContainer) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.syncProperties = cacheProperties.getBloomSync();
+        cacheProperties.getBloom().forEach((keyPrefix, bloom) ->
+                filters.put(keyPrefix, new BloomFilter(bloom.getExpectedInsertions(), bloom.getFalseProbability())));
+        // 订阅新增数据的广播，消息格式 {keyPrefix}:{id}
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            int index = body.lastIndexOf(':');
+            BloomFilter filter = filters.get(body.substring(0, index));
+            if (filter != null) {
+                filter.add(Long.parseLong(body.substring(index + 1)));
+            }
+        }, new ChannelTopic(BLOOM_ADD_CHANNEL));
+    }
+
+    @PostConstruct
+    private void init() {
+        if (filters.isEmpty()) {
+            return;
+        }
+        long interval = syncProperties.getInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::sync, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 该前缀是否配置了布隆过滤器
+     */
+    public boolean isConfigured(String keyPrefix) {
+        return filters.containsKey(keyPrefix);
+    }
+
+    /**
+     * 该前缀的布隆过滤器是否已加载完成并生效
+     */
+    public boolean isReady(String keyPrefix) {
+        return readyPrefixes.contains(keyPrefix);
+    }
+
+    /**
+     * 判断id是否可能存在，未配置或未加载完成的前缀一律返回true
+     * @param keyPrefix 缓存标识前缀（业务名）
+     * @param id 数据id
+     * @return false表示一定不存在
+     */
+    public boolean mightContain(String keyPrefix, Object id) {
+        if (!readyPrefixes.contains(keyPrefix)) {
+            return true;
+        }
+        return filters.get(keyPrefix).mightContain(toLong(id));
+    }
+
+    /**
+     * 新增数据后调用，写入本地，记入Redis并广播到其他节点
+     * @param keyPrefix 缓存标识前缀（业务名）
+     * @param id 数据id
+     */
+    public void add(String keyPrefix, Object id) {
+        BloomFilter filter = filters.get(keyPrefix);
+        if (filter == null || id == null) {
+            return;
+        }
+        filter.add(toLong(id));
+        stringRedisTemplate.opsForZSet().add(BLOOM_RECENT_KEY + keyPrefix, id.toString(), System.currentTimeMillis());
+        stringRedisTemplate.convertAndSend(BLOOM_ADD_CHANNEL, keyPrefix + ":" + id);
+    }
+
+    /**
+     * 启动加载时使用，只写本地，不广播
+     */
+    public void load(String keyPrefix, long id) {
+        BloomFilter filter = filters.get(keyPrefix);
+        if (filter != null) {
+            filter.add(id);
+        }
+    }
+
+    /**
+     * 标记前缀加载完成，开始拦截
+     */
+    public void markReady(String keyPrefix) {
+        readyPrefixes.add(keyPrefix);
+        log.info("布隆过滤器加载完成：{}", keyPrefix);
+    }
+
+    /**
+     * 按当前元素数估算的理论误判率
+     */
+    public double expectedFalseProbability(String keyPrefix) {
+        BloomFilter filter = filters.get(keyPrefix);
+        return filter == null ? 0 : filter.expectedFalseProbability();
+    }
+
+    /**
+     * 补偿同步：拉取上次同步以来的新增id写入本地，并清理超过保留期的记录
+     */
+    private void sync() {
+        try {
+            long now = System.currentTimeMillis();
+            long min = lastSyncTime == 0 ? now - syncProperties.getRetention().toMillis() : lastSyncTime - CLOCK_SKEW_MILLIS;
+            for (Map.Entry<String, BloomFilter> entry : filters.entrySet()) {
+                String key = BLOOM_RECENT_KEY + entry.getKey();
+                Set<ZSetOperations.TypedTuple<String>> tuples = stringRedisTemplate.opsForZSet()
+                        .rangeByScoreWithScores(key, min, Double.MAX_VALUE);
+                if (tuples != null) {
+                    for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                        entry.getValue().add(Long.parseLong(tuple.getValue()));
+                    }
+                }
+                stringRedisTemplate.opsForZSet().removeRangeByScore(key, 0, now - syncProperties.getRetention().toMillis());
+            }
+            lastSyncTime = now;
+        } catch (Exception e) {
+            // 下次同步从上次成功的时间继续
+            log.warn("布隆过滤器补偿同步失败", e);
+        }
+    }
+
+    private long toLong(Object id) {
+        return id instanceof Number ? ((Number) id).longValue() : Long.parseLong(id.toString());
+    }
+}
@@ -1,26 +1,109 @@
 package com.hmdp.utils;
 
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
+import com.hmdp.config.CacheProperties;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
 
-import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
 
 import static com.hmdp.utils.RedisConstants.*;
 
+@Component
 public class CacheClient {
 
     private final StringRedisTemplate stringRedisTemplate;
 
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    private final CacheBloomFilter cacheBloomFilter;
 
-    public CacheClient(StringRedisTemplate stringRedisTemplate) {
+    private final CacheRebuildExecutor cacheRebuildExecutor;
+
+    private final HotKeyDetector hotKeyDetector;
+
+    /**
+     * 缓存编码器，由 hmdp.cache.codec 指定
+     */
+    private final CacheCodec codec;
+
+    /**
+     * 按缓存前缀开启的本地一级缓存，只在构造时写入，之后只读
+     */
+    private final Map<String, LocalCache> localCaches = new HashMap<>();
+
+    /**
+     * 按缓存前缀统计的命中数据
+     */
+    private final Map<String, CacheStats> cacheStats = new ConcurrentHashMap<>();
+
+    /**
+     * 本节点正在加载的key，同一个key的并发未命中共用一个结果
+     */
+    private final Map<String, CompletableFuture<Object>> inFlightLoads = new ConcurrentHashMap<>();
+
+    /**
+     * 等待其他节点重建完成通知的key
+     */
+    private final Map<String, CompletableFuture<Object>> loadedSignals = new ConcurrentHashMap<>();
+
+    /**
+     * 等待重建通知的最长时间，超时后主动重查缓存，防止通知丢失
+     */
+    private static final long LOAD_WAIT_MILLIS = 500;
+
+    /**
+     * XFetch算法的beta系数，大于1更倾向提前刷新
+     */
+    private static final double XFETCH_BETA = 1.0;
+
+    /**
+     * 等待缓存重建的总超时时间，取锁超时时间的2倍
+     */
+    private static final long LOAD_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(LOCK_SHOP_TTL) * 2;
+
+    public CacheClient(StringRedisTemplate stringRedisTemplate, CacheProperties cacheProperties,
+                       RedisMessageListenerContainer listenerContainer, CacheBloomFilter cacheBloomFilter,
+                       CacheRebuildExecutor cacheRebuildExecutor, HotKeyDetector hotKeyDetector,
+                       List<CacheCodec> codecs) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.cacheBloomFilter = cacheBloomFilter;
+        this.cacheRebuildExecutor = cacheRebuildExecutor;
+        this.hotKeyDetector = hotKeyDetector;
+        this.codec = codecs.stream()
+                .filter(c -> c.name().equals(cacheProperties.getCodec()))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("未知的缓存编码器：" + cacheProperties.getCodec()));
+        // 初始化配置了的本地缓存
+        cacheProperties.getLocal().forEach((keyPrefix, local) ->
+                localCaches.put(keyPrefix, new LocalCache(local.getMaxSize(), local.getTtl().toMillis())));
+        // 订阅缓存失效广播，清除本节点的本地缓存
+        listenerContainer.addMessageListener(
+                (message, pattern) -> evictLocal(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+        // 订阅缓存重建完成的广播，唤醒本节点等待的线程
+        listenerContainer.addMessageListener((message, pattern) -> {
+            CompletableFuture<Object> loaded = loadedSignals.remove(new String(message.getBody(), StandardCharsets.UTF_8));
+            if (loaded != null) {
+                loaded.complete(null);
+            }
+        }, new ChannelTopic(CACHE_LOADED_CHANNEL));
     }
 
     /**
@@ -31,9 +114,8 @@ public class CacheClient {
      * @param timeUnit 时间单位
      */
     public void set(String key, Object value, Long expire, TimeUnit timeUnit) {
-        String jsonStr = JSONUtil.toJsonStr(value);
-        // 存入Redis
-        stringRedisTemplate.opsForValue().set(key, jsonStr, expire, timeUnit);
+        // 编码后存入Redis
+        setBytes(key, codec.encode(value), Expiration.from(expire, timeUnit));
     }
 
     /**
@@ -44,12 +126,22 @@ public class CacheClient {
      * @param timeUnit 时间单位
      */
     public void setWithLogicalExpire(String key, Object value, Long expire, TimeUnit timeUnit) {
-        RedisData redisData = new RedisData();
-        redisData.setData(value);
+        setWithLogicalExpire(key, value, expire, timeUnit, null);
+    }
+
+    /**
+     * 添加逻辑过期缓存到Redis，同时记录重建耗时，供概率提前刷新使用
+     * @param key 缓存标识
+     * @param value 缓存对象
+     * @param expire 过期时间
+     * @param timeUnit 时间单位
+     * @param delta 重建耗时（毫秒）
+     */
+    public void setWithLogicalExpire(String key, Object value, Long expire, TimeUnit timeUnit, Long delta) {
         // 设置过期时间
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(timeUnit.toSeconds(expire)));
+        long expireMillis = System.currentTimeMillis() + timeUnit.toMillis(expire);
         // 存入缓存
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        setBytes(key, codec.encodeLogical(value, expireMillis, delta), Expiration.persistent());
     }
 
     /**
@@ -66,26 +158,44 @@ public class CacheClient {
      */
     public <R, ID> R queryWithPassThrough(String keyPrefix, ID id, Class<R> clazz,
                                           Function<ID, R> doFallBack, Long expire, TimeUnit timeUnit) {
-        String cacheKey = CACHE_KEY + keyPrefix + ":" + id;
+        String cacheKey = buildKey(keyPrefix, id);
+        CacheStats stats = stats(keyPrefix);
+        // 查询本地缓存
+        R local = getLocal(keyPrefix, cacheKey, clazz, stats);
+        if (local != null) {
+            return local;
+        }
+        // 布隆过滤器判断id是否存在
+        if (rejectByBloomFilter(keyPrefix, id, stats)) {
+            return null;
+        }
         // 查询Redis缓存
-        String json = stringRedisTemplate.opsForValue().get(cacheKey);
-        if (StrUtil.isNotBlank(json)) {
+        byte[] value = getBytes(cacheKey);
+        if (value != null && value.length > 0) {
             // 命中有效缓存
-            return JSONUtil.toBean(json, clazz);
+            stats.redisHits.increment();
+            R r = codec.decode(value, clazz);
+            putLocal(keyPrefix, cacheKey, r);
+            return r;
         }
-        if (json != null) {
+        if (value != null) {
             // 命中空对象，数据库中没有
+            stats.redisHits.increment();
             return null;
         }
+        stats.redisMisses.increment();
         // 查询数据库
+        stats.dbLoads.increment();
         R r = doFallBack.apply(id);
         if (r == null) {
+            countBloomFalsePositive(keyPrefix, stats);
             // 缓存空对象
-            this.set(cacheKey, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+            setNull(cacheKey);
             return null;
         }
         // 缓存到Redis
         this.set(cacheKey, r, expire, timeUnit);
+        putLocal(keyPrefix, cacheKey, r);
         // 返回
         return r;
     }
@@ -104,46 +214,144 @@ public class CacheClient {
      */
     public <R, ID> R queryWithMutex(String keyPrefix, ID id, Class<R> clazz,
                                     Function<ID, R> doFallBack, Long expire, TimeUnit timeUnit) {
-        String cacheKey = CACHE_KEY + keyPrefix + id;
+        String cacheKey = buildKey(keyPrefix, id);
+        CacheStats stats = stats(keyPrefix);
+        // 查询本地缓存
+        R local = getLocal(keyPrefix, cacheKey, clazz, stats);
+        if (local != null) {
+            return local;
+        }
+        // 布隆过滤器判断id是否存在
+        if (rejectByBloomFilter(keyPrefix, id, stats)) {
+            return null;
+        }
         // 从redis中查询商铺缓存
-        String json = stringRedisTemplate.opsForValue().get(cacheKey);
-        if (StrUtil.isNotBlank(json)) {  //Blank -> ""  "\n\t"  null
+        byte[] value = getBytes(cacheKey);
+        if (value != null && value.length > 0) {  // 空数组为缓存的空值
             // 有可用的缓存
-            return JSONUtil.toBean(json, clazz);  // 存在直接返回
+            stats.redisHits.increment();
+            R r = codec.decode(value, clazz);
+            putLocal(keyPrefix, cacheKey, r);
+            return r;  // 存在直接返回
         }
-        if (json != null) {
+        if (value != null) {
             // 命中的为空值，数据库中没有
+            stats.redisHits.increment();
             return null;
         }
-        R r = null;
-        String lockKey = LOCK_KEY + keyPrefix + id;
+        stats.redisMisses.increment();
+        // 本节点对同一个key的并发未命中合并为一次加载，其余线程等待同一个结果，不再休眠重试
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> loading = inFlightLoads.putIfAbsent(cacheKey, future);
+        if (loading != null) {
+            // 已有线程在加载，等待其结果
+            return clazz.cast(await(loading, LOAD_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        }
         try {
+            R r = loadWithMutex(keyPrefix, id, cacheKey, clazz, doFallBack, expire, timeUnit, stats);
+            future.complete(r);
+            // 返回
+            return r;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightLoads.remove(cacheKey, future);
+        }
+    }
+
+    /**
+     * 获取分布式互斥锁后重建缓存；锁被其他节点持有时，等待其重建完成的通知后读取缓存
+     */
+    private <R, ID> R loadWithMutex(String keyPrefix, ID id, String cacheKey, Class<R> clazz,
+                                    Function<ID, R> doFallBack, Long expire, TimeUnit timeUnit, CacheStats stats) {
+        String lockKey = LOCK_KEY + keyPrefix + ":" + id;
+        long deadline = System.currentTimeMillis() + LOAD_TIMEOUT_MILLIS;
+        while (true) {
+            // 先登记等待通知，再尝试加锁，避免错过加锁失败与开始等待之间发出的通知
+            CompletableFuture<Object> loaded = loadedSignals.computeIfAbsent(cacheKey, k -> new CompletableFuture<>());
             // 获取互斥锁
-            boolean isLock = tryLock(lockKey);
-            if (!isLock) {
-                // 失败，则休眠并重试
-                Thread.sleep(50);
-                return queryWithMutex(keyPrefix, id, clazz, doFallBack, expire, timeUnit);
+            stats.lockAttempts.increment();
+            if (tryLock(lockKey)) {
+                loadedSignals.remove(cacheKey, loaded);
+                try {
+                    // 双重检查，其他节点可能刚刚完成重建
+                    byte[] value = getBytes(cacheKey);
+                    if (value != null) {
+                        return decodeOrNull(keyPrefix, cacheKey, value, clazz);
+                    }
+                    // 成功，根据id查询数据库
+                    stats.dbLoads.increment();
+                    R r = doFallBack.apply(id);
+                    // 模拟重建的延时
+                    // Thread.sleep(200);
+                    if (r == null) {
+                        countBloomFalsePositive(keyPrefix, stats);
+                        // 不存在，将空值写入redis，解决缓存穿透问题
+                        setNull(cacheKey);
+                        return null;
+                    }
+                    // 存在，写入redis
+                    this.set(cacheKey, r, expire, timeUnit);
+                    putLocal(keyPrefix, cacheKey, r);
+                    return r;
+                } finally {
+                    // 释放互斥锁
+                    unlock(lockKey);
+                    // 通知其他节点缓存已重建
+                    stringRedisTemplate.convertAndSend(CACHE_LOADED_CHANNEL, cacheKey);
+                }
+            }
+            // 锁被其他节点持有，先查一次缓存，没有则等待重建完成的通知（通知丢失时按超时兜底重查）
+            byte[] value = getBytes(cacheKey);
+            if (value == null) {
+                try {
+                    loaded.get(LOAD_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException ignored) {
+                    // 超时后重新查询缓存、尝试加锁
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                } catch (ExecutionException e) {
+                    throw new RuntimeException(e.getCause());
+                }
+                value = getBytes(cacheKey);
             }
-            // 成功，根据id查询数据库
-            r = doFallBack.apply(id);
-            // 模拟重建的延时
-            // Thread.sleep(200);
-            if (r == null) {
-                // 不存在，将空值写入redis，解决缓存穿透问题
-                this.set(cacheKey, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
-                return null;
+            if (value != null) {
+                return decodeOrNull(keyPrefix, cacheKey, value, clazz);
             }
-            // 存在，写入redis
-            this.set(cacheKey, r, expire, timeUnit);
+            if (System.currentTimeMillis() > deadline) {
+                throw new RuntimeException("等待缓存重建超时：" + cacheKey);
+            }
+        }
+    }
+
+    /**
+     * 解析缓存值，空值表示数据库中不存在
+     */
+    private <R> R decodeOrNull(String keyPrefix, String cacheKey, byte[] value, Class<R> clazz) {
+        if (value.length == 0) {
+            return null;
+        }
+        R r = codec.decode(value, clazz);
+        putLocal(keyPrefix, cacheKey, r);
+        return r;
+    }
+
+    /**
+     * 等待合并加载的结果
+     */
+    private Object await(CompletableFuture<Object> future, long timeout, TimeUnit timeUnit) {
+        try {
+            return future.get(timeout, timeUnit);
         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new RuntimeException(e);
-        } finally {
-            // 释放互斥锁
-            unlock(lockKey);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new RuntimeException("等待缓存重建超时", e);
         }
-        // 返回
-        return r;
     }
 
     /**
@@ -160,42 +368,382 @@ public class CacheClient {
      */
     public <R, ID> R queryWithLogicalExpire(String keyPrefix, ID id, Class<R> clazz,
                                             Function<ID, R> doFallBack, Long expire, TimeUnit timeUnit) {
-        String cacheKey = CACHE_KEY + keyPrefix + ":" + id;
+        String cacheKey = buildKey(keyPrefix, id);
+        CacheStats stats = stats(keyPrefix);
+        // 查询本地缓存
+        R local = getLocal(keyPrefix, cacheKey, clazz, stats);
+        if (local != null) {
+            return local;
+        }
         // 查询Redis缓存
-        String json = stringRedisTemplate.opsForValue().get(cacheKey);
-        if (StrUtil.isBlank(json)) {
+        byte[] value = getBytes(cacheKey);
+        if (value == null || value.length == 0) {
             // 缓存未命中
+            stats.redisMisses.increment();
             return null;
         }
-        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-        R r = JSONUtil.toBean((JSONObject) redisData.getData(), clazz);
+        stats.redisHits.increment();
+        LogicalValue<R> data = codec.decodeLogical(value, clazz);
+        R r = data.getValue();
         // 获取逻辑过期时间
-        LocalDateTime expireTime = redisData.getExpireTime();
-        if (LocalDateTime.now().isBefore(expireTime)) {
+        if (System.currentTimeMillis() < data.getExpireMillis()) {
             // 没有过期，直接返回
+            putLocal(keyPrefix, cacheKey, r);
             return r;
         }
+        // 已过期，异步重建
+        rebuildAsync(keyPrefix, id, cacheKey, doFallBack, expire, timeUnit, stats);
+        // 返回旧数据
+        return r;
+    }
+
+    /**
+     * 通用根据id查询方法 -> 解决：缓存击穿（逻辑过期 + 概率提前刷新，XFetch算法）
+     * 临近过期时，每个请求以 now - delta * beta * ln(random) >= expireTime 的概率提前刷新，
+     * 越接近过期、重建越耗时，提前刷新的概率越大，通常只有一个请求在过期前触发重建，避免过期瞬间的加锁风暴
+     * @param keyPrefix 缓存标识前缀（业务名）
+     * @param id 查询id
+     * @param clazz 结果类型
+     * @param doFallBack 数据库查询逻辑
+     * @param expire 过期时间
+     * @param timeUnit 时间单位
+     * @return 查询结果
+     * @param <R> 结果类型
+     * @param <ID> id类型
+     */
+    public <R, ID> R queryWithEarlyRefresh(String keyPrefix, ID id, Class<R> clazz,
+                                           Function<ID, R> doFallBack, Long expire, TimeUnit timeUnit) {
+        String cacheKey = buildKey(keyPrefix, id);
+        CacheStats stats = stats(keyPrefix);
+        // 查询本地缓存
+        R local = getLocal(keyPrefix, cacheKey, clazz, stats);
+        if (local != null) {
+            return local;
+        }
+        // 查询Redis缓存
+        byte[] value = getBytes(cacheKey);
+        if (value == null || value.length == 0) {
+            // 缓存未命中
+            stats.redisMisses.increment();
+            return null;
+        }
+        stats.redisHits.increment();
+        LogicalValue<R> data = codec.decodeLogical(value, clazz);
+        R r = data.getValue();
+        long expireMillis = data.getExpireMillis();
+        long delta = data.getDelta();
+        // -ln(random) 服从指数分布，random 取 (0, 1]
+        double gap = delta * XFETCH_BETA * -Math.log(1 - ThreadLocalRandom.current().nextDouble());
+        long now = System.currentTimeMillis();
+        if (now + gap < expireMillis) {
+            // 未到刷新时机，直接返回
+            putLocal(keyPrefix, cacheKey, r);
+            return r;
+        }
+        // 提前（或已过期）异步重建
+        rebuildAsync(keyPrefix, id, cacheKey, doFallBack, expire, timeUnit, stats);
+        // 返回当前数据
+        return r;
+    }
+
+    /**
+     * 获取锁后异步重建逻辑过期缓存，并记录重建耗时
+     */
+    private <ID> void rebuildAsync(String keyPrefix, ID id, String cacheKey, Function<ID, ?> doFallBack,
+                                   Long expire, TimeUnit timeUnit, CacheStats stats) {
+        if (cacheRebuildExecutor.isPending(cacheKey)) {
+            // 本节点已在重建，不再争抢锁
+            return;
+        }
         String lockKey = LOCK_KEY + keyPrefix + ":" + id;
         // 加锁
+        stats.lockAttempts.increment();
         boolean isLock = tryLock(lockKey);
-        if (isLock) {
-            // 成功获取锁，开启新线程重建缓存
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
-                try {
-                    // 数据库查询
-                    R r1 = doFallBack.apply(id);
-                    // 模拟复杂业务
-                    // Thread.sleep(200);
-                    // 重建缓存
-                    this.setWithLogicalExpire(cacheKey, r1, expire, timeUnit);
-                } finally {
-                    // 释放锁
-                    unlock(lockKey);
+        if (!isLock) {
+            return;
+        }
+        // 成功获取锁，开启新线程重建缓存
+        boolean isSubmit = cacheRebuildExecutor.submit(cacheKey, () -> {
+            try {
+                long begin = System.currentTimeMillis();
+                // 数据库查询
+                stats.dbLoads.increment();
+                Object r1 = doFallBack.apply(id);
+                // 模拟复杂业务
+                // Thread.sleep(200);
+                // 重建缓存
+                this.setWithLogicalExpire(cacheKey, r1, expire, timeUnit, System.currentTimeMillis() - begin);
+            } finally {
+                // 释放锁
+                unlock(lockKey);
+            }
+        });
+        if (!isSubmit) {
+            // 任务被去重或丢弃，释放锁
+            unlock(lockKey);
+        }
+    }
+
+    /**
+     * 批量根据id查询：本地缓存 -> 一次MGET -> 未命中的id一次批量查库 -> 一次管道回写Redis
+     * 与 queryWithPassThrough、queryWithMutex 使用相同的缓存格式（带TTL的普通缓存）
+     * @param keyPrefix 缓存标识前缀（业务名）
+     * @param ids 查询id集合
+     * @param clazz 结果类型
+     * @param batchLoader 数据库批量查询逻辑，返回 id -> 数据，不存在的id不返回
+     * @param expire 过期时间
+     * @param timeUnit 时间单位
+     * @return id -> 数据，按ids的顺序，不存在的id不包含在内
+     * @param <R> 结果类型
+     * @param <ID> id类型
+     */
+    public <R, ID> Map<ID, R> multiGet(String keyPrefix, Collection<ID> ids, Class<R> clazz,
+                                       Function<List<ID>, Map<ID, R>> batchLoader, Long expire, TimeUnit timeUnit) {
+        if (ids == null || ids.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        CacheStats stats = stats(keyPrefix);
+        Map<ID, R> found = new HashMap<>(ids.size() * 2);
+        // 查询本地缓存，并用布隆过滤器过滤掉一定不存在的id
+        List<ID> redisIds = new ArrayList<>(ids.size());
+        for (ID id : ids) {
+            R local = getLocal(keyPrefix, buildKey(keyPrefix, id), clazz, stats);
+            if (local != null) {
+                found.put(id, local);
+            } else if (!rejectByBloomFilter(keyPrefix, id, stats) && !redisIds.contains(id)) {
+                redisIds.add(id);
+            }
+        }
+        if (!redisIds.isEmpty()) {
+            // 一次MGET查询Redis
+            byte[][] rawKeys = new byte[redisIds.size()][];
+            for (int i = 0; i < rawKeys.length; i++) {
+                rawKeys[i] = buildKey(keyPrefix, redisIds.get(i)).getBytes(StandardCharsets.UTF_8);
+            }
+            List<byte[]> values = stringRedisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                    connection.stringCommands().mGet(rawKeys));
+            List<ID> missIds = new ArrayList<>();
+            for (int i = 0; i < rawKeys.length; i++) {
+                byte[] value = values == null ? null : values.get(i);
+                ID id = redisIds.get(i);
+                if (value == null) {
+                    stats.redisMisses.increment();
+                    missIds.add(id);
+                    continue;
+                }
+                stats.redisHits.increment();
+                if (value.length > 0) {
+                    // 空值表示数据库中没有
+                    R r = codec.decode(value, clazz);
+                    putLocal(keyPrefix, buildKey(keyPrefix, id), r);
+                    found.put(id, r);
                 }
-            });
+            }
+            if (!missIds.isEmpty()) {
+                // 未命中的id一次批量查询数据库
+                stats.dbLoads.increment();
+                Map<ID, R> loaded = batchLoader.apply(missIds);
+                // 一次管道写回Redis，不存在的id写入空值
+                Expiration expiration = Expiration.from(expire, timeUnit);
+                Expiration nullExpiration = Expiration.from(CACHE_NULL_TTL, TimeUnit.MINUTES);
+                stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    for (ID id : missIds) {
+                        byte[] rawKey = buildKey(keyPrefix, id).getBytes(StandardCharsets.UTF_8);
+                        R r = loaded.get(id);
+                        if (r == null) {
+                            connection.stringCommands().set(rawKey, new byte[0], nullExpiration,
+                                    RedisStringCommands.SetOption.upsert());
+                        } else {
+                            connection.stringCommands().set(rawKey, codec.encode(r), expiration,
+                                    RedisStringCommands.SetOption.upsert());
+                        }
+                    }
+                    return null;
+                });
+                for (ID id : missIds) {
+                    R r = loaded.get(id);
+                    if (r == null) {
+                        countBloomFalsePositive(keyPrefix, stats);
+                    } else {
+                        putLocal(keyPrefix, buildKey(keyPrefix, id), r);
+                        found.put(id, r);
+                    }
+                }
+            }
+        }
+        // 按ids的顺序返回
+        Map<ID, R> result = new LinkedHashMap<>(found.size() * 2);
+        for (ID id : ids) {
+            R r = found.get(id);
+            if (r != null) {
+                result.put(id, r);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 批量写入带TTL的普通缓存，一次管道提交，不写本地缓存
+     * @param keyPrefix 缓存标识前缀（业务名）
+     * @param values id -> 数据
+     * @param expire 过期时间
+     * @param timeUnit 时间单位
+     * @param <R> 数据类型
+     * @param <ID> id类型
+     */
+    public <R, ID> void setAll(String keyPrefix, Map<ID, R> values, Long expire, TimeUnit timeUnit) {
+        if (values.isEmpty()) {
+            return;
+        }
+        Expiration expiration = Expiration.from(expire, timeUnit);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            values.forEach((id, r) -> connection.stringCommands().set(
+                    buildKey(keyPrefix, id).getBytes(StandardCharsets.UTF_8), codec.encode(r), expiration,
+                    RedisStringCommands.SetOption.upsert()));
+            return null;
+        });
+    }
+
+    /**
+     * 删除缓存，并广播通知所有节点清除本地缓存
+     * @param keyPrefix 缓存标识前缀（业务名）
+     * @param id 数据id
+     */
+    public void delete(String keyPrefix, Object id) {
+        String cacheKey = buildKey(keyPrefix, id);
+        // 删除Redis缓存
+        stringRedisTemplate.delete(cacheKey);
+        // 清除本节点的本地缓存，不等广播回来，避免本节点读到旧值
+        evictLocal(cacheKey);
+        // 广播给其他节点
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, cacheKey);
+    }
+
+    /**
+     * 该前缀累计的数据库加载次数
+     */
+    public long dbLoads(String keyPrefix) {
+        return stats(keyPrefix).dbLoads.sum();
+    }
+
+    /**
+     * 获取各缓存前缀的命中统计
+     * @return 前缀 -> 统计数据
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        cacheStats.forEach((keyPrefix, stats) -> {
+            Map<String, Object> map = stats.toMap();
+            LocalCache localCache = localCaches.get(keyPrefix);
+            map.put("localSize", localCache == null ? 0 : localCache.size());
+            if (cacheBloomFilter.isConfigured(keyPrefix)) {
+                map.put("bloomExpectedFalseProbability", cacheBloomFilter.expectedFalseProbability(keyPrefix));
+            }
+            result.put(keyPrefix, map);
+        });
+        return result;
+    }
+
+    /**
+     * 以字节形式读取缓存，绕过StringRedisTemplate的字符串序列化
+     */
+    private byte[] getBytes(String key) {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        return stringRedisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().get(rawKey));
+    }
+
+    /**
+     * 以字节形式写入缓存
+     */
+    private void setBytes(String key, byte[] value, Expiration expiration) {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        stringRedisTemplate.execute((RedisCallback<Boolean>) connection ->
+                connection.stringCommands().set(rawKey, value, expiration, RedisStringCommands.SetOption.upsert()));
+    }
+
+    /**
+     * 缓存空值（空数组），解决缓存穿透
+     */
+    private void setNull(String key) {
+        setBytes(key, new byte[0], Expiration.from(CACHE_NULL_TTL, TimeUnit.MINUTES));
+    }
+
+    /**
+     * 拼接缓存key：cache:{keyPrefix}:{id}
+     */
+    private String buildKey(String keyPrefix, Object id) {
+        return CACHE_KEY + keyPrefix + ":" + id;
+    }
+
+    /**
+     * 布隆过滤器判断id一定不存在，则直接拦截，不查Redis也不查数据库
+     * @return 是否拦截
+     */
+    private boolean rejectByBloomFilter(String keyPrefix, Object id, CacheStats stats) {
+        if (cacheBloomFilter.mightContain(keyPrefix, id)) {
+            return false;
+        }
+        stats.bloomRejects.increment();
+        return true;
+    }
+
+    /**
+     * 布隆过滤器已生效但数据库查询为空，记为一次误判
+     */
+    private void countBloomFalsePositive(String keyPrefix, CacheStats stats) {
+        if (cacheBloomFilter.isReady(keyPrefix)) {
+            stats.bloomFalsePositives.increment();
+        }
+    }
+
+    private CacheStats stats(String keyPrefix) {
+        return cacheStats.computeIfAbsent(keyPrefix, k -> new CacheStats());
+    }
+
+    /**
+     * 查询本地缓存，并计入热点探测；该前缀未开启本地缓存或未命中时查询热点key的本地副本
+     */
+    private <R> R getLocal(String keyPrefix, String cacheKey, Class<R> clazz, CacheStats stats) {
+        hotKeyDetector.record(cacheKey);
+        LocalCache localCache = localCaches.get(keyPrefix);
+        Object value = localCache == null ? null : localCache.get(cacheKey);
+        if (value != null) {
+            stats.localHits.increment();
+            return clazz.cast(value);
+        }
+        if (localCache != null) {
+            stats.localMisses.increment();
+        }
+        value = hotKeyDetector.getReplica(cacheKey);
+        if (value == null) {
+            return null;
+        }
+        stats.hotReplicaHits.increment();
+        return clazz.cast(value);
+    }
+
+    private void putLocal(String keyPrefix, String cacheKey, Object value) {
+        LocalCache localCache = localCaches.get(keyPrefix);
+        if (localCache != null) {
+            localCache.put(cacheKey, value);
+        }
+        hotKeyDetector.putReplica(cacheKey, value);
+    }
+
+    /**
+     * 根据缓存key清除本地缓存，key格式为 cache:{keyPrefix}:{id}
+     */
+    private void evictLocal(String cacheKey) {
+        hotKeyDetector.invalidate(cacheKey);
+        int end = cacheKey.indexOf(':', CACHE_KEY.length());
+        if (!cacheKey.startsWith(CACHE_KEY) || end < 0) {
+            return;
+        }
+        LocalCache localCache = localCaches.get(cacheKey.substring(CACHE_KEY.length(), end));
+        if (localCache != null) {
+            localCache.invalidate(cacheKey);
         }
-        // 返回旧数据
-        return r;
     }
 
     /**
@@ -0,0 +1,45 @@
+package com.hmdp.utils;
+
+/**
+ * 缓存序列化扩展点，CacheClient 写入Redis前编码、读出后解码
+ * 实现类注册为Spring Bean，通过 hmdp.cache.codec 按 {@link #name()} 选择
+ */
+public interface CacheCodec {
+
+    /**
+     * 编码器名称，对应配置项 hmdp.cache.codec
+     */
+    String name();
+
+    /**
+     * 编码普通缓存
+     * @param value 缓存对象
+     * @return 字节数组
+     */
+    byte[] encode(Object value);
+
+    /**
+     * 解码普通缓存
+     * @param bytes 字节数组
+     * @param clazz 结果类型
+     * @return 缓存对象
+     */
+    <T> T decode(byte[] bytes, Class<T> clazz);
+
+    /**
+     * 编码逻辑过期缓存
+     * @param value 缓存对象
+     * @param expireMillis 逻辑过期时间戳（毫秒）
+     * @param delta 重建耗时（毫秒），可为空
+     * @return 字节数组
+     */
+    byte[] encodeLogical(Object value, long expireMillis, Long delta);
+
+    /**
+     * 解码逻辑过期缓存
+     * @param bytes 字节数组
+     * @param clazz 结果类型
+     * @return 缓存对象及过期信息
+     */
+    <T> LogicalValue<T> decodeLogical(byte[] bytes, Class<T> clazz);
+}
@@ -0,0 +1,131 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.config.CacheProperties;
+import com.hmdp.entity.CacheInvalidation;
+import com.hmdp.mapper.CacheInvalidationMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 数据更新后的缓存失效：
+ * 1. 事务提交后删除缓存，并延迟再删一次，清掉提交前并发读请求回写的旧值（延迟双删）
+ * 2. 开启发件箱时，失效记录与业务数据在同一事务写入 tb_cache_invalidation，由后台轮询删除缓存，
+ *    提交后进程宕机也不会漏删；不经过本服务的写入方（如后台管理）插入记录即可失效缓存
+ */
+@Slf4j
+@Component
+public class CacheInvalidator {
+
+    private final CacheClient cacheClient;
+
+    private final CacheInvalidationMapper cacheInvalidationMapper;
+
+    private final CacheProperties.Invalidation properties;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            r -> new Thread(r, "cache-invalidator"));
+
+    public CacheInvalidator(CacheClient cacheClient, CacheInvalidationMapper cacheInvalidationMapper,
+                            CacheProperties cacheProperties) {
+        this.cacheClient = cacheClient;
+        this.cacheInvalidationMapper = cacheInvalidationMapper;
+        this.properties = cacheProperties.getInvalidation();
+    }
+
+    @PostConstruct
+    private void init() {
+        if (properties.isOutboxEnabled()) {
+            long interval = properties.getPollInterval().toMillis();
+            scheduler.scheduleWithFixedDelay(this::pollOutbox, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 在事务中调用，事务提交后失效缓存；不在事务中时立即失效
+     * @param keyPrefix 缓存标识前缀（业务名）
+     * @param id 数据id
+     */
+    public void invalidateAfterCommit(String keyPrefix, Long id) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidate(keyPrefix, id);
+            return;
+        }
+        if (properties.isOutboxEnabled()) {
+            // 与业务数据同一事务写入，回滚时一起回滚
+            cacheInvalidationMapper.insert(new CacheInvalidation()
+                    .setKeyPrefix(keyPrefix)
+                    .setDataId(id)
+                    .setCreateTime(LocalDateTime.now()));
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                invalidate(keyPrefix, id);
+            }
+        });
+    }
+
+    /**
+     * 立即删除缓存，并安排延迟的第二次删除
+     */
+    private void invalidate(String keyPrefix, Long id) {
+        cacheClient.delete(keyPrefix, id);
+        long delay = properties.getDoubleDeleteDelay().toMillis();
+        if (delay > 0) {
+            scheduler.schedule(() -> deleteQuietly(keyPrefix, id), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 按id顺序处理发件箱中的记录，删除缓存后删除记录
+     */
+    private void pollOutbox() {
+        try {
+            while (true) {
+                List<CacheInvalidation> records = cacheInvalidationMapper.selectList(
+                        new QueryWrapper<CacheInvalidation>()
+                                .orderByAsc("id")
+                                .last("limit " + properties.getPollBatchSize()));
+                if (records.isEmpty()) {
+                    return;
+                }
+                for (CacheInvalidation record : records) {
+                    cacheClient.delete(record.getKeyPrefix(), record.getDataId());
+                }
+                cacheInvalidationMapper.deleteBatchIds(
+                        records.stream().map(CacheInvalidation::getId).collect(Collectors.toList()));
+                if (records.size() < properties.getPollBatchSize()) {
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            // 下次轮询重试，记录未删除不会丢失
+            log.error("处理缓存失效发件箱异常", e);
+        }
+    }
+
+    private void deleteQuietly(String keyPrefix, Long id) {
+        try {
+            cacheClient.delete(keyPrefix, id);
+        } catch (Exception e) {
+            log.error("延迟删除缓存失败：{}:{}", keyPrefix, id, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+}
@@ -0,0 +1,164 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.CacheProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓存重建线程池：有界队列、按key去重、可配置的拒绝策略，应用关闭时优雅停止
+ */
+@Slf4j
+@Component
+public class CacheRebuildExecutor {
+
+    /**
+     * 队列满时的处理策略
+     */
+    public enum RejectPolicy {
+        /**
+         * 放弃本次重建，调用方继续返回旧数据
+         */
+        STALE,
+        /**
+         * 由调用线程同步重建
+         */
+        CALLER_RUNS
+    }
+
+    private final ThreadPoolExecutor executor;
+
+    private final RejectPolicy rejectPolicy;
+
+    private final long shutdownTimeoutMillis;
+
+    /**
+     * 已提交、尚未执行完的key
+     */
+    private final Set<String> pendingKeys = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder totalLatencyMillis = new LongAdder();
+    private final AtomicLong maxLatencyMillis = new AtomicLong();
+
+    public CacheRebuildExecutor(CacheProperties cacheProperties) {
+        CacheProperties.Rebuild rebuild = cacheProperties.getRebuild();
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                rebuild.getCorePoolSize(),
+                rebuild.getMaxPoolSize(),
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(rebuild.getQueueCapacity()),
+                r -> new Thread(r, "cache-rebuild-" + threadIndex.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.rejectPolicy = rebuild.getRejectPolicy();
+        this.shutdownTimeoutMillis = rebuild.getShutdownTimeout().toMillis();
+    }
+
+    /**
+     * 该key是否已有重建任务在排队或执行
+     */
+    public boolean isPending(String key) {
+        return pendingKeys.contains(key);
+    }
+
+    /**
+     * 提交重建任务，同一个key已有任务未完成时不重复提交
+     * @param key 缓存key
+     * @param task 重建逻辑
+     * @return 任务是否被执行（提交到线程池或由调用线程执行），false表示被去重或被丢弃
+     */
+    public boolean submit(String key, Runnable task) {
+        if (!pendingKeys.add(key)) {
+            // 已有相同key的任务
+            deduplicated.increment();
+            return false;
+        }
+        Runnable wrapped = () -> run(key, task);
+        try {
+            executor.execute(wrapped);
+            submitted.increment();
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            if (rejectPolicy == RejectPolicy.CALLER_RUNS && !executor.isShutdown()) {
+                // 调用线程同步重建
+                wrapped.run();
+                return true;
+            }
+            // 放弃重建，返回旧数据
+            pendingKeys.remove(key);
+            log.warn("缓存重建队列已满，放弃重建：{}", key);
+            return false;
+        }
+    }
+
+    private void run(String key, Runnable task) {
+        long begin = System.currentTimeMillis();
+        try {
+            task.run();
+            completed.increment();
+        } catch (RuntimeException e) {
+            failed.increment();
+            log.error("缓存重建失败：{}", key, e);
+        } finally {
+            pendingKeys.remove(key);
+            long latency = System.currentTimeMillis() - begin;
+            totalLatencyMillis.add(latency);
+            maxLatencyMillis.accumulateAndGet(latency, Math::max);
+        }
+    }
+
+    /**
+     * 线程池运行指标
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        long done = completed.sum() + failed.sum();
+        map.put("queueDepth", executor.getQueue().size());
+        map.put("activeThreads", executor.getActiveCount());
+        map.put("poolSize", executor.getPoolSize());
+        map.put("pendingKeys", pendingKeys.size());
+        map.put("submitted", submitted.sum());
+        map.put("deduplicated", deduplicated.sum());
+        map.put("rejected", rejected.sum());
+        map.put("completed", completed.sum());
+        map.put("failed", failed.sum());
+        map.put("avgLatencyMillis", done == 0 ? 0 : totalLatencyMillis.sum() / done);
+        map.put("maxLatencyMillis", maxLatencyMillis.get());
+        return map;
+    }
+
+    /**
+     * 停止接收新任务，等待已提交的重建完成
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(shutdownTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                log.warn("缓存重建任务未在{}ms内完成，强制关闭", shutdownTimeoutMillis);
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
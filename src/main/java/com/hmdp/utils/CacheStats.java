@@ -0,0 +1,55 @@
+package com.hmdp.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个缓存前缀（业务）的命中统计
+ */
+public class CacheStats {
+
+    public final LongAdder localHits = new LongAdder();
+    public final LongAdder localMisses = new LongAdder();
+    /**
+     * 命中热点key本地副本的次数
+     */
+    public final LongAdder hotReplicaHits = new LongAdder();
+    public final LongAdder redisHits = new LongAdder();
+    public final LongAdder redisMisses = new LongAdder();
+    public final LongAdder dbLoads = new LongAdder();
+    /**
+     * 尝试获取重建锁（SETNX）的次数
+     */
+    public final LongAdder lockAttempts = new LongAdder();
+    /**
+     * 被布隆过滤器拦截的请求数（真阴性）
+     */
+    public final LongAdder bloomRejects = new LongAdder();
+    /**
+     * 布隆过滤器放行但数据库中不存在的请求数（误判）
+     */
+    public final LongAdder bloomFalsePositives = new LongAdder();
+
+    /**
+     * 导出为Map，便于以JSON形式返回
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("localHits", localHits.sum());
+        map.put("localMisses", localMisses.sum());
+        map.put("hotReplicaHits", hotReplicaHits.sum());
+        map.put("redisHits", redisHits.sum());
+        map.put("redisMisses", redisMisses.sum());
+        map.put("dbLoads", dbLoads.sum());
+        map.put("lockAttempts", lockAttempts.sum());
+        long rejects = bloomRejects.sum();
+        long falsePositives = bloomFalsePositives.sum();
+        map.put("bloomRejects", rejects);
+        map.put("bloomFalsePositives", falsePositives);
+        // 实测误判率 = 误判数 / 不存在的id请求总数
+        map.put("bloomFalsePositiveRate",
+                rejects + falsePositives == 0 ? 0 : (double) falsePositives / (rejects + falsePositives));
+        return map;
+    }
+}
@@ -0,0 +1,171 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.CacheProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.hmdp.utils.RedisConstants.HOT_KEY_CHANNEL;
+
+/**
+ * 热点key探测：CacheClient 的每次读取计入滑动窗口 Count-Min Sketch，
+ * 窗口内次数超过阈值的key广播给所有节点，各节点在热点期内把它复制到短TTL的本地副本，分担Redis单分片的压力
+ */
+@Slf4j
+@Component
+public class HotKeyDetector {
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final CacheProperties.HotKey properties;
+
+    private final SlidingCountMinSketch sketch;
+
+    /**
+     * 热点key的本地副本，所有前缀共用
+     */
+    private final LocalCache replicas;
+
+    /**
+     * 热点key -> 热点截止时间，由广播写入，所有节点一致
+     */
+    private final Map<String, Long> hotKeys = new ConcurrentHashMap<>();
+
+    /**
+     * 本节点窗口内次数较高的候选key -> 最近一次的估计值，用于展示top-N
+     */
+    private final Map<String, Candidate> candidates = new ConcurrentHashMap<>();
+
+    /**
+     * 候选key的最大个数，防止大量低频key撑大内存
+     */
+    private static final int MAX_CANDIDATES = 1000;
+
+    public HotKeyDetector(StringRedisTemplate stringRedisTemplate, CacheProperties cacheProperties,
+                          RedisMessageListenerContainer listenerContainer) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.properties = cacheProperties.getHotKey();
+        this.sketch = new SlidingCountMinSketch(properties.getDepth(), properties.getWidth(),
+                properties.getWindow().toMillis(), properties.getBuckets());
+        this.replicas = new LocalCache(properties.getReplicaMaxSize(), properties.getReplicaTtl().toMillis());
+        // 订阅热点key广播，消息内容为缓存key
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String cacheKey = new String(message.getBody(), StandardCharsets.UTF_8);
+            hotKeys.put(cacheKey, System.currentTimeMillis() + properties.getWindow().toMillis());
+        }, new ChannelTopic(HOT_KEY_CHANNEL));
+    }
+
+    /**
+     * 记录一次读取，次数超过阈值且尚未标记为热点时广播
+     * @param cacheKey 缓存key
+     */
+    public void record(String cacheKey) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        long estimate = sketch.incrementAndEstimate(cacheKey);
+        if (estimate < properties.getThreshold() / 10) {
+            return;
+        }
+        // 达到阈值的1/10才进入候选，便于观察接近阈值的key
+        Candidate candidate = candidates.get(cacheKey);
+        if (candidate != null) {
+            candidate.update(estimate);
+        } else if (candidates.size() < MAX_CANDIDATES) {
+            candidates.put(cacheKey, new Candidate(estimate));
+        }
+        if (estimate >= properties.getThreshold() && !isHot(cacheKey)) {
+            // 先标记本节点，避免广播回来之前重复广播
+            hotKeys.put(cacheKey, System.currentTimeMillis() + properties.getWindow().toMillis());
+            stringRedisTemplate.convertAndSend(HOT_KEY_CHANNEL, cacheKey);
+            log.info("发现热点key：{}，窗口内次数约 {}", cacheKey, estimate);
+        }
+    }
+
+    /**
+     * 是否处于热点期
+     */
+    public boolean isHot(String cacheKey) {
+        Long deadline = hotKeys.get(cacheKey);
+        if (deadline == null) {
+            return false;
+        }
+        if (deadline < System.currentTimeMillis()) {
+            hotKeys.remove(cacheKey, deadline);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 查询热点key的本地副本
+     * @return 副本，不是热点或副本已过期返回null
+     */
+    public Object getReplica(String cacheKey) {
+        if (hotKeys.isEmpty() || !isHot(cacheKey)) {
+            return null;
+        }
+        return replicas.get(cacheKey);
+    }
+
+    /**
+     * 热点key写入本地副本，非热点key忽略
+     */
+    public void putReplica(String cacheKey, Object value) {
+        if (!hotKeys.isEmpty() && isHot(cacheKey)) {
+            replicas.put(cacheKey, value);
+        }
+    }
+
+    /**
+     * 缓存失效时清除本地副本
+     */
+    public void invalidate(String cacheKey) {
+        replicas.invalidate(cacheKey);
+    }
+
+    /**
+     * 本节点窗口内次数最高的key
+     * @return 按次数倒序，包含 key、count（估计次数）、hot（是否处于热点期）
+     */
+    public List<Map<String, Object>> topKeys() {
+        long expireBefore = System.currentTimeMillis() - properties.getWindow().toMillis();
+        // 清理已滑出窗口的候选
+        candidates.entrySet().removeIf(e -> e.getValue().lastSeen < expireBefore);
+        List<Map.Entry<String, Candidate>> entries = new ArrayList<>(candidates.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue().estimate, a.getValue().estimate));
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (int i = 0; i < entries.size() && i < properties.getTopN(); i++) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            String cacheKey = entries.get(i).getKey();
+            map.put("key", cacheKey);
+            map.put("count", entries.get(i).getValue().estimate);
+            map.put("hot", isHot(cacheKey));
+            result.add(map);
+        }
+        return result;
+    }
+
+    private static class Candidate {
+        private volatile long estimate;
+        private volatile long lastSeen;
+
+        private Candidate(long estimate) {
+            update(estimate);
+        }
+
+        private void update(long estimate) {
+            this.estimate = estimate;
+            this.lastSeen = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * 基于Hutool的JSON编码，默认实现，逻辑过期缓存以 {@link RedisData} 的JSON格式存储
+ */
+@Component
+public class JsonCacheCodec implements CacheCodec {
+
+    @Override
+    public String name() {
+        return "json";
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        return JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> clazz) {
+        return JSONUtil.toBean(new String(bytes, StandardCharsets.UTF_8), clazz);
+    }
+
+    @Override
+    public byte[] encodeLogical(Object value, long expireMillis, Long delta) {
+        RedisData redisData = new RedisData();
+        redisData.setData(value);
+        redisData.setDelta(delta);
+        redisData.setExpireTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(expireMillis), ZoneId.systemDefault()));
+        return JSONUtil.toJsonStr(redisData).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <T> LogicalValue<T> decodeLogical(byte[] bytes, Class<T> clazz) {
+        // 先解析外层RedisData，再将data解析为目标类型
+        RedisData redisData = JSONUtil.toBean(new String(bytes, StandardCharsets.UTF_8), RedisData.class);
+        T value = JSONUtil.toBean((JSONObject) redisData.getData(), clazz);
+        long expireMillis = redisData.getExpireTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long delta = redisData.getDelta() == null ? 0 : redisData.getDelta();
+        return new LogicalValue<>(value, expireMillis, delta);
+    }
+}
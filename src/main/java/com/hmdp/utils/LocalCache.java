@@ -0,0 +1,96 @@
+package com.hmdp.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 进程内一级缓存（L1），容量上限 + TTL 淘汰，位于 Redis（L2）之前
+ */
+public class LocalCache {
+
+    /**
+     * 最大缓存条数，超出后按LRU淘汰
+     */
+    private final int maxSize;
+
+    /**
+     * 缓存存活时间（毫秒）
+     */
+    private final long ttlMillis;
+
+    /**
+     * accessOrder=true 的LinkedHashMap，最久未访问的在队头
+     */
+    private final LinkedHashMap<String, Entry> map;
+
+    public LocalCache(int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.map = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > LocalCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * 获取缓存，过期则移除
+     * @param key 缓存key
+     * @return 缓存对象，不存在或已过期返回null
+     */
+    public synchronized Object get(String key) {
+        Entry entry = map.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expireAt < System.currentTimeMillis()) {
+            // 已过期
+            map.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * 使用默认TTL写入缓存
+     */
+    public void put(String key, Object value) {
+        put(key, value, ttlMillis);
+    }
+
+    /**
+     * 写入缓存
+     * @param key 缓存key
+     * @param value 缓存对象
+     * @param ttlMillis 存活时间
+     */
+    public synchronized void put(String key, Object value, long ttlMillis) {
+        if (value == null) {
+            return;
+        }
+        map.put(key, new Entry(value, System.currentTimeMillis() + ttlMillis));
+    }
+
+    public synchronized void invalidate(String key) {
+        map.remove(key);
+    }
+
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    private static class Entry {
+        private final Object value;
+        private final long expireAt;
+
+        private Entry(Object value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.hmdp.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 解码后的逻辑过期缓存
+ */
+@Data
+@AllArgsConstructor
+public class LogicalValue<T> {
+    private T value;
+    /**
+     * 逻辑过期时间戳（毫秒）
+     */
+    private long expireMillis;
+    /**
+     * 重建耗时（毫秒），没有记录为0
+     */
+    private long delta;
+}
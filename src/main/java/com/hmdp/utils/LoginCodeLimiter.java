@@ -0,0 +1,179 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.LoginProperties;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_CODE_FAIL_KEY;
+import static com.hmdp.utils.RedisConstants.LOGIN_CODE_KEY;
+import static com.hmdp.utils.RedisConstants.LOGIN_CODE_TTL;
+import static com.hmdp.utils.RedisConstants.LOGIN_LIMIT_KEY;
+
+/**
+ * 发送验证码、登录的防刷：按手机号、IP的滑动窗口限流，验证码错误次数达到上限后作废。
+ * 限流判断、计数和验证码的写入或校验在一次Lua脚本调用中完成，被拒绝的请求不会写验证码、不会查询数据库。
+ * IP取 request.getRemoteAddr()，部署在反向代理之后时需要配置 server.forward-headers-strategy
+ */
+@Component
+public class LoginCodeLimiter {
+
+    private static final DefaultRedisScript<Long> LOGIN_CODE_SCRIPT;
+    static {
+        LOGIN_CODE_SCRIPT = new DefaultRedisScript<>();
+        LOGIN_CODE_SCRIPT.setResultType(Long.class);
+        LOGIN_CODE_SCRIPT.setLocation(new ClassPathResource("login_code.lua"));
+    }
+
+    /**
+     * 成功
+     */
+    public static final int OK = 0;
+    /**
+     * 被限流
+     */
+    public static final int LIMITED = 1;
+    /**
+     * 验证码错误
+     */
+    public static final int WRONG_CODE = -1;
+    /**
+     * 验证码不存在或已过期
+     */
+    public static final int NO_CODE = -2;
+    /**
+     * 错误次数过多，验证码已作废
+     */
+    public static final int CODE_INVALIDATED = -3;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final LoginProperties.Limit properties;
+
+    private final String codeTtlSeconds = String.valueOf(TimeUnit.MINUTES.toSeconds(LOGIN_CODE_TTL));
+
+    private final LongAdder sendPassed = new LongAdder();
+    private final LongAdder sendPhoneRejects = new LongAdder();
+    private final LongAdder sendIpRejects = new LongAdder();
+    private final LongAdder loginPassed = new LongAdder();
+    private final LongAdder loginPhoneRejects = new LongAdder();
+    private final LongAdder loginIpRejects = new LongAdder();
+    private final LongAdder wrongCodes = new LongAdder();
+    private final LongAdder missingCodes = new LongAdder();
+    private final LongAdder invalidatedCodes = new LongAdder();
+
+    public LoginCodeLimiter(StringRedisTemplate stringRedisTemplate, LoginProperties loginProperties) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.properties = loginProperties.getLimit();
+    }
+
+    /**
+     * 限流并保存验证码
+     * @param phone 手机号
+     * @param ip 客户端IP
+     * @param code 新验证码
+     * @return OK 已保存；LIMITED 被限流
+     */
+    public int send(String phone, String ip, String code) {
+        int result = execute("send", phone, ip, code, properties.getSendPhone(), properties.getSendIp(),
+                sendPhoneRejects, sendIpRejects);
+        if (result == OK) {
+            sendPassed.increment();
+        }
+        return result;
+    }
+
+    /**
+     * 限流并校验验证码，校验通过后验证码删除
+     * @param phone 手机号
+     * @param ip 客户端IP
+     * @param code 用户提交的验证码
+     * @return OK 验证码正确；LIMITED 被限流；WRONG_CODE、NO_CODE、CODE_INVALIDATED 校验失败
+     */
+    public int verify(String phone, String ip, String code) {
+        int result = execute("verify", phone, ip, code == null ? "" : code,
+                properties.getLoginPhone(), properties.getLoginIp(), loginPhoneRejects, loginIpRejects);
+        switch (result) {
+            case OK:
+                loginPassed.increment();
+                break;
+            case WRONG_CODE:
+                wrongCodes.increment();
+                break;
+            case NO_CODE:
+                missingCodes.increment();
+                break;
+            case CODE_INVALIDATED:
+                invalidatedCodes.increment();
+                break;
+            default:
+                break;
+        }
+        return result;
+    }
+
+    /**
+     * 本节点的放行、拒绝次数
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sendPassed", sendPassed.sum());
+        stats.put("sendPhoneRejects", sendPhoneRejects.sum());
+        stats.put("sendIpRejects", sendIpRejects.sum());
+        stats.put("loginPassed", loginPassed.sum());
+        stats.put("loginPhoneRejects", loginPhoneRejects.sum());
+        stats.put("loginIpRejects", loginIpRejects.sum());
+        stats.put("wrongCodes", wrongCodes.sum());
+        stats.put("missingCodes", missingCodes.sum());
+        stats.put("invalidatedCodes", invalidatedCodes.sum());
+        return stats;
+    }
+
+    private int execute(String action, String phone, String ip, String code,
+                        List<LoginProperties.Window> phoneWindows, List<LoginProperties.Window> ipWindows,
+                        LongAdder phoneRejects, LongAdder ipRejects) {
+        List<String> keys = new ArrayList<>();
+        keys.add(LOGIN_CODE_KEY + phone);
+        keys.add(LOGIN_CODE_FAIL_KEY + phone);
+        List<String> args = new ArrayList<>();
+        args.add(action);
+        args.add(String.valueOf(System.currentTimeMillis()));
+        args.add(code);
+        args.add(codeTtlSeconds);
+        args.add(String.valueOf(properties.getMaxAttempts()));
+        if (properties.isEnabled()) {
+            // 同一窗口长度的计数共用一个key：login:limit:{操作}:{phone|ip}:{维度值}:{窗口毫秒数}
+            addWindows(keys, args, action + ":phone:" + phone, phoneWindows);
+            addWindows(keys, args, action + ":ip:" + ip, ipWindows);
+        }
+        Long result = stringRedisTemplate.execute(LOGIN_CODE_SCRIPT, keys, args.toArray());
+        int r = result == null ? NO_CODE : result.intValue();
+        if (r <= 0) {
+            return r;
+        }
+        // 大于0为拒绝的窗口序号，手机号的窗口在前
+        if (r <= phoneWindows.size()) {
+            phoneRejects.increment();
+        } else {
+            ipRejects.increment();
+        }
+        return LIMITED;
+    }
+
+    private void addWindows(List<String> keys, List<String> args, String prefix, List<LoginProperties.Window> windows) {
+        for (LoginProperties.Window window : windows) {
+            long millis = window.getWindow().toMillis();
+            keys.add(LOGIN_LIMIT_KEY + prefix + ":" + millis);
+            args.add(String.valueOf(millis));
+            args.add(String.valueOf(window.getMax()));
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.LoginProperties;
+import com.hmdp.dto.UserDTO;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_LOGOUT_CHANNEL;
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_KEY;
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_TTL;
+
+/**
+ * 登录会话查询：本地缓存 token -> 用户，未命中时一次Lua脚本完成 HGETALL 和按需续期。
+ * 有效期为天级别，只在剩余有效期低于阈值时续期，大部分请求不需要EXPIRE；无效token同样在本地缓存，
+ * 退出登录时删除Redis中的会话并广播，所有节点清除本地缓存。
+ * 使用签名token（hmdp.login.token.mode=signed）时直接校验签名，不使用本地缓存和Redis会话
+ */
+@Component
+public class LoginSessionCache {
+
+    private static final DefaultRedisScript<List<Object>> SESSION_SCRIPT;
+    static {
+        // 脚本返回多条批量回复，元素类型由序列化器决定，Class对象无法携带泛型参数
+        @SuppressWarnings("unchecked")
+        Class<List<Object>> listType = (Class<List<Object>>) (Class<?>) List.class;
+        SESSION_SCRIPT = new DefaultRedisScript<>();
+        SESSION_SCRIPT.setResultType(listType);
+        SESSION_SCRIPT.setLocation(new ClassPathResource("session_get.lua"));
+    }
+
+    /**
+     * 无效token，本地缓存的空值
+     */
+    private static final UserDTO INVALID = new UserDTO();
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final SignedSessionToken signedSessionToken;
+
+    private final LocalCache localCache;
+
+    private final String ttlSeconds = String.valueOf(TimeUnit.DAYS.toSeconds(LOGIN_USER_TTL));
+
+    private final String thresholdSeconds;
+
+    public LoginSessionCache(StringRedisTemplate stringRedisTemplate, SignedSessionToken signedSessionToken,
+                             LoginProperties loginProperties, RedisMessageListenerContainer listenerContainer) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.signedSessionToken = signedSessionToken;
+        LoginProperties.Session session = loginProperties.getSession();
+        this.localCache = new LocalCache(session.getLocalMaxSize(), session.getLocalTtl().toMillis());
+        this.thresholdSeconds = String.valueOf(session.getRefreshThreshold().getSeconds());
+        // 订阅退出登录广播
+        listenerContainer.addMessageListener((message, pattern) ->
+                        localCache.invalidate(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(LOGIN_LOGOUT_CHANNEL));
+    }
+
+    /**
+     * 根据token查询登录用户
+     * @param token 登录token
+     * @return 登录用户，token无效返回null
+     */
+    public UserDTO get(String token) {
+        if (signedSessionToken.isEnabled()) {
+            return signedSessionToken.verify(token);
+        }
+        Object local = localCache.get(token);
+        if (local != null) {
+            return local == INVALID ? null : (UserDTO) local;
+        }
+        List<Object> fields = stringRedisTemplate.execute(SESSION_SCRIPT,
+                Collections.singletonList(LOGIN_USER_KEY + token), ttlSeconds, thresholdSeconds);
+        if (fields == null || fields.isEmpty()) {
+            localCache.put(token, INVALID);
+            return null;
+        }
+        UserDTO user = BeanMappers.toUserDTO(fields);
+        localCache.put(token, user);
+        return user;
+    }
+
+    /**
+     * 退出登录：删除会话，清除所有节点的本地缓存
+     * @param token 登录token
+     */
+    public void remove(String token) {
+        if (signedSessionToken.isEnabled()) {
+            signedSessionToken.revoke(token);
+            return;
+        }
+        stringRedisTemplate.delete(LOGIN_USER_KEY + token);
+        localCache.invalidate(token);
+        stringRedisTemplate.convertAndSend(LOGIN_LOGOUT_CHANNEL, token);
+    }
+}
@@ -0,0 +1,418 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONUtil;
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.entity.VoucherOrder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 订单消息的异步发送：请求线程只把订单放入有界内存队列，由发送线程批量发送到RabbitMQ，发布确认异步回调。
+ * 队列满（Broker变慢、未确认消息过多、连接被阻塞）时订单交给溢出写入线程，追加到本地溢出文件，Broker恢复后由发送线程重放。
+ * 溢出写入线程保持文件打开，每次取出队列中的全部订单写入后只刷盘一次（组提交），请求线程不等待磁盘。
+ * 确认超时或被拒绝的消息会重发，消费者需要按订单id幂等
+ */
+@Slf4j
+@Component
+public class OrderPublisher {
+
+    private final RabbitTemplate rabbitTemplate;
+
+    private final SeckillProperties.Publisher properties;
+
+    /**
+     * 待发送的订单
+     */
+    private final BlockingQueue<VoucherOrder> buffer;
+
+    /**
+     * 已发送、等待确认的订单，key为correlationId
+     */
+    private final Map<String, Pending> outstanding = new ConcurrentHashMap<>();
+
+    private final AtomicLong correlationSequence = new AtomicLong();
+
+    private final File spillFile;
+
+    /**
+     * 重放中的溢出文件，重放完成后删除；进程中途退出时下次启动继续重放
+     */
+    private final File replayFile;
+
+    /**
+     * 等待写入溢出文件的订单。不设上限：组提交一次刷盘写入整批，只有磁盘持续慢于下单速度时才会积压
+     */
+    private final BlockingQueue<VoucherOrder> spillQueue = new LinkedBlockingQueue<>();
+
+    /**
+     * 溢出文件的写入锁，只在溢出写入线程与重放改名之间竞争，请求线程不获取
+     */
+    private final Object spillLock = new Object();
+
+    /**
+     * 打开的溢出文件，重放改名前关闭，下次写入时重新打开
+     */
+    private FileOutputStream spillOut;
+
+    private Writer spillWriter;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder confirmed = new LongAdder();
+    private final LongAdder nacked = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+
+    private volatile boolean running = true;
+
+    private volatile boolean spilling = true;
+
+    private Thread sender;
+
+    private Thread spillWriterThread;
+
+    public OrderPublisher(RabbitTemplate rabbitTemplate, SeckillProperties seckillProperties) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.properties = seckillProperties.getPublisher();
+        this.buffer = new ArrayBlockingQueue<>(properties.getBufferCapacity());
+        this.spillFile = new File(properties.getSpillFile());
+        this.replayFile = new File(properties.getSpillFile() + ".replaying");
+    }
+
+    @PostConstruct
+    private void init() {
+        // 发布确认回调，需要 spring.rabbitmq.publisher-confirm-type=correlated
+        rabbitTemplate.setConfirmCallback((correlationData, ack, cause) -> {
+            if (correlationData == null) {
+                return;
+            }
+            Pending pending = outstanding.remove(correlationData.getId());
+            if (pending == null) {
+                // 已按超时处理
+                return;
+            }
+            if (ack) {
+                confirmed.increment();
+            } else {
+                nacked.increment();
+                log.warn("订单消息被拒绝，重新发送：{}，{}", pending.order.getId(), cause);
+                retry(pending.order);
+            }
+        });
+        sender = new Thread(this::sendLoop, "order-publisher");
+        sender.start();
+        spillWriterThread = new Thread(this::spillLoop, "order-spill-writer");
+        spillWriterThread.start();
+    }
+
+    /**
+     * 发送订单消息，不等待Broker
+     * @param order 订单
+     */
+    public void publish(VoucherOrder order) {
+        published.increment();
+        if (!buffer.offer(order)) {
+            // 内存队列已满，交给溢出写入线程
+            spill(order);
+        }
+    }
+
+    /**
+     * 发送统计
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("published", published.sum());
+        map.put("sent", sent.sum());
+        map.put("confirmed", confirmed.sum());
+        map.put("nacked", nacked.sum());
+        map.put("timedOut", timedOut.sum());
+        map.put("spilled", spilled.sum());
+        map.put("replayed", replayed.sum());
+        map.put("buffered", buffer.size());
+        map.put("outstanding", outstanding.size());
+        map.put("spillQueued", spillQueue.size());
+        map.put("spillFileBytes", spillFile.length());
+        return map;
+    }
+
+    private void sendLoop() {
+        long lastTimeoutCheck = 0;
+        // 启动时先重放上次遗留的溢出文件
+        boolean replayNeeded = true;
+        while (running || !buffer.isEmpty()) {
+            try {
+                if (System.currentTimeMillis() - lastTimeoutCheck > 1000) {
+                    expireOutstanding();
+                    lastTimeoutCheck = System.currentTimeMillis();
+                }
+                if (outstanding.size() >= properties.getMaxOutstanding()) {
+                    // 未确认的消息过多，Broker处理不过来，暂停发送，新订单进入溢出文件
+                    Thread.sleep(10);
+                    continue;
+                }
+                VoucherOrder first = buffer.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    // 空闲时重放溢出文件
+                    if (running && (replayNeeded || spillFile.length() > 0)) {
+                        replayNeeded = false;
+                        replay();
+                    }
+                    continue;
+                }
+                List<VoucherOrder> batch = new ArrayList<>(properties.getBatchSize());
+                batch.add(first);
+                buffer.drainTo(batch, properties.getBatchSize() - 1);
+                send(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("发送订单消息异常", e);
+            }
+        }
+    }
+
+    /**
+     * 在同一个信道上批量发送，发送失败的订单写入溢出文件
+     */
+    private void send(List<VoucherOrder> batch) {
+        List<String> ids = new ArrayList<>(batch.size());
+        try {
+            rabbitTemplate.invoke(operations -> {
+                for (VoucherOrder order : batch) {
+                    String id = String.valueOf(correlationSequence.incrementAndGet());
+                    // 先登记再发送，避免确认先于登记到达
+                    outstanding.put(id, new Pending(order, System.currentTimeMillis()));
+                    ids.add(id);
+                    operations.convertAndSend(MqConstants.ORDER_TOPIC, MqConstants.ORDER_ADD_KEY, order,
+                            new CorrelationData(id));
+                    sent.increment();
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("发送订单消息失败，写入溢出文件：{}", e.getMessage());
+            List<VoucherOrder> failed = new ArrayList<>();
+            for (String id : ids) {
+                Pending pending = outstanding.remove(id);
+                if (pending != null) {
+                    failed.add(pending.order);
+                }
+            }
+            // 未来得及发送的订单
+            failed.addAll(batch.subList(ids.size(), batch.size()));
+            spill(failed);
+        }
+    }
+
+    /**
+     * 超时未确认的消息视为丢失，重新发送
+     */
+    private void expireOutstanding() {
+        long deadline = System.currentTimeMillis() - properties.getConfirmTimeout().toMillis();
+        outstanding.forEach((id, pending) -> {
+            if (pending.sentAt < deadline && outstanding.remove(id, pending)) {
+                timedOut.increment();
+                retry(pending.order);
+            }
+        });
+    }
+
+    private void retry(VoucherOrder order) {
+        if (!buffer.offer(order)) {
+            spill(order);
+        }
+    }
+
+    private void spill(VoucherOrder order) {
+        spillQueue.add(order);
+    }
+
+    private void spill(List<VoucherOrder> orders) {
+        spillQueue.addAll(orders);
+    }
+
+    /**
+     * 溢出写入线程：取出队列中的全部订单，一次写入、一次刷盘
+     */
+    private void spillLoop() {
+        List<VoucherOrder> batch = new ArrayList<>();
+        while (spilling || !spillQueue.isEmpty()) {
+            try {
+                VoucherOrder first = spillQueue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                spillQueue.drainTo(batch);
+                write(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        synchronized (spillLock) {
+            closeSpillFile();
+        }
+    }
+
+    /**
+     * 以JSON行追加到溢出文件并刷盘
+     */
+    private void write(List<VoucherOrder> orders) {
+        synchronized (spillLock) {
+            try {
+                if (spillWriter == null) {
+                    spillOut = new FileOutputStream(spillFile, true);
+                    spillWriter = new BufferedWriter(new OutputStreamWriter(spillOut, StandardCharsets.UTF_8));
+                }
+                for (VoucherOrder order : orders) {
+                    spillWriter.write(JSONUtil.toJsonStr(order));
+                    spillWriter.write('\n');
+                }
+                spillWriter.flush();
+                spillOut.getFD().sync();
+                spilled.add(orders.size());
+            } catch (IOException e) {
+                // 溢出文件也写不了，只能记录日志，由对账任务补偿；关闭文件，下次重新打开
+                log.error("写入订单溢出文件失败，订单：{}", JSONUtil.toJsonStr(orders), e);
+                closeSpillFile();
+            }
+        }
+    }
+
+    /**
+     * 关闭溢出文件，调用方持有 spillLock
+     */
+    private void closeSpillFile() {
+        if (spillWriter == null) {
+            return;
+        }
+        try {
+            spillWriter.close();
+        } catch (IOException e) {
+            log.warn("关闭订单溢出文件失败", e);
+        }
+        spillWriter = null;
+        spillOut = null;
+    }
+
+    /**
+     * 重放溢出文件：先改名，新的溢出写入新文件；重放中未确认的消息过多时，剩余的订单写回溢出文件
+     */
+    private void replay() throws InterruptedException {
+        synchronized (spillLock) {
+            if (!replayFile.exists()) {
+                // 先关闭，之后的溢出写入新文件
+                closeSpillFile();
+                if (spillFile.length() == 0 || !spillFile.renameTo(replayFile)) {
+                    return;
+                }
+            }
+        }
+        List<VoucherOrder> remaining = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(replayFile.toPath(), StandardCharsets.UTF_8)) {
+            List<VoucherOrder> batch = new ArrayList<>(properties.getBatchSize());
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                VoucherOrder order = JSONUtil.toBean(line, VoucherOrder.class);
+                if (!remaining.isEmpty() || !awaitCapacity()) {
+                    remaining.add(order);
+                    continue;
+                }
+                batch.add(order);
+                if (batch.size() >= properties.getBatchSize()) {
+                    send(batch);
+                    replayed.add(batch.size());
+                    batch = new ArrayList<>(properties.getBatchSize());
+                }
+            }
+            if (!batch.isEmpty()) {
+                send(batch);
+                replayed.add(batch.size());
+            }
+        } catch (IOException e) {
+            log.error("读取订单溢出文件失败", e);
+            return;
+        }
+        spill(remaining);
+        if (!replayFile.delete()) {
+            log.warn("删除已重放的溢出文件失败：{}", replayFile);
+        }
+    }
+
+    /**
+     * 等待未确认的消息数降到上限以下，超过确认超时时间仍未降下来返回false
+     */
+    private boolean awaitCapacity() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + properties.getConfirmTimeout().toMillis();
+        while (outstanding.size() >= properties.getMaxOutstanding()) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    /**
+     * 停止接收后发送完内存队列中的订单，仍未确认的写入溢出文件，等溢出写入线程写完后退出，下次启动重放
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        sender.join(properties.getConfirmTimeout().toMillis());
+        long deadline = System.currentTimeMillis() + properties.getConfirmTimeout().toMillis();
+        while (!outstanding.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        List<VoucherOrder> unsent = new ArrayList<>();
+        buffer.drainTo(unsent);
+        outstanding.values().forEach(pending -> unsent.add(pending.order));
+        outstanding.clear();
+        spill(unsent);
+        spilling = false;
+        spillWriterThread.join();
+    }
+
+    private static class Pending {
+        private final VoucherOrder order;
+        private final long sentAt;
+
+        private Pending(VoucherOrder order, long sentAt) {
+            this.order = order;
+            this.sentAt = sentAt;
+        }
+    }
+}
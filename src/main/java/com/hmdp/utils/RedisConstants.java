@@ -5,8 +5,13 @@ public class RedisConstants {
 
     public static final String LOGIN_CODE_KEY = "login:code:";
     public static final Long LOGIN_CODE_TTL = 2L;
+    public static final String LOGIN_CODE_FAIL_KEY = "login:code:fail:";
+    public static final String LOGIN_LIMIT_KEY = "login:limit:";
     public static final String LOGIN_USER_KEY = "login:token:";
     public static final Long LOGIN_USER_TTL = 30L;
+    public static final String LOGIN_LOGOUT_CHANNEL = "login:logout";
+    public static final String LOGIN_DENY_KEY = "login:deny";
+    public static final String LOGIN_DENY_CHANNEL = "login:deny";
 
     public static final String CACHE_KEY = "cache:";
     public static final Long CACHE_NULL_TTL = 2L;
@@ -14,15 +19,37 @@ public class RedisConstants {
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
 
+    public static final Long CACHE_SHOP_TYPE_TTL = 30L;
+    public static final String CACHE_SHOP_TYPE_KEY = "cache:shop-type:list";
+
+    public static final Long CACHE_USER_TTL = 30L;
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+    public static final String CACHE_LOADED_CHANNEL = "cache:loaded";
+    public static final String BLOOM_ADD_CHANNEL = "bloom:add";
+    public static final String BLOOM_RECENT_KEY = "bloom:recent:";
+    public static final String HOT_KEY_CHANNEL = "cache:hot";
+
     public static final String LOCK_KEY = "lock:";
 
     public static final Long LOCK_SHOP_TTL = 10L;
     public static final String LOCK_ORDER_KEY = "lock:order:";
+    public static final String LOCK_BLOG_LIKED_FLUSH_KEY = "lock:blog:liked:flush";
 
     public static final String SECKILL_ORDER_KEY = "seckill:order:";
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_VOUCHER_KEY = "seckill:voucher:";
+    public static final String SECKILL_VOUCHER_CHANNEL = "seckill:voucher";
+    public static final String SECKILL_LIMIT_KEY = "seckill:limit:";
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:sold-out";
+    public static final String SECKILL_STOCK_RESET_CHANNEL = "seckill:stock-reset";
+
+    public static final String ORDER_USER_KEY = "order:user:";
+    public static final Long ORDER_USER_TTL = 7L;
 
     public static final String BLOG_LIKED_KEY = "blog:liked:";
+    public static final String BLOG_LIKED_COUNT_KEY = "blog:liked:count:";
+    public static final String BLOG_LIKED_DIRTY_KEY = "blog:liked:dirty";
+    public static final String BLOG_LIKED_FLUSHING_KEY = "blog:liked:flushing";
     public static final String FOLLOWS_KEY = "follows:";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
@@ -1,16 +1,27 @@
 package com.hmdp.utils;
 
+import com.hmdp.config.IdWorkerProperties;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.hmdp.utils.RedisConstants.INCR_KEY;
 
 
+@Slf4j
 @Component
 public class RedisIdWorker {
 
@@ -24,9 +35,35 @@ public class RedisIdWorker {
      */
     private static final int COUNT_BITS = 32;
 
+    private static final long SECONDS_PER_DAY = 86400L;
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd");
+
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private IdWorkerProperties idWorkerProperties;
+
+    /**
+     * 最近一次格式化的日期，一天只格式化一次
+     */
+    private volatile FormattedDate formattedDate = new FormattedDate(-1, null);
+
+    /**
+     * 号段模式下每个自增key前缀的号段缓冲
+     */
+    private final Map<String, SegmentBuffer> buffers = new ConcurrentHashMap<>();
+
+    /**
+     * 异步预取号段的线程
+     */
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "id-segment-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     /**
      * 生成订单id
      * @param keyPrefix 自增key前缀
@@ -34,13 +71,175 @@ public class RedisIdWorker {
      */
     public long nextId(String keyPrefix) {
         // 获取时间戳
-        long timestamp = LocalDateTime.now().toEpochSecond(ZoneOffset.UTC) - BEGIN_TIMESTAMP;
-        // 将日期作为key
-        String date = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
+        long timestamp = timestamp();
+        long day = day(timestamp);
+        if ("segment".equals(idWorkerProperties.getMode())) {
+            // 号段模式，从本地号段分配序列号
+            return compose(timestamp, nextSequence(keyPrefix, day));
+        }
         // 获取序列号（Redis整型自增）
-        long incr = stringRedisTemplate.opsForValue().increment(INCR_KEY + keyPrefix + ":" + date);
+        long incr = stringRedisTemplate.opsForValue().increment(sequenceKey(keyPrefix, day));
 
         // 拼接时间戳和序列号并返回
-        return timestamp << COUNT_BITS | incr;
+        return compose(timestamp, incr);
+    }
+
+    /**
+     * 当前时间戳，从开始时间起的秒数
+     */
+    public long timestamp() {
+        return LocalDateTime.now().toEpochSecond(ZoneOffset.UTC) - BEGIN_TIMESTAMP;
+    }
+
+    /**
+     * 当天的序列号key，将日期作为key
+     * @param keyPrefix 自增key前缀
+     */
+    public String sequenceKey(String keyPrefix) {
+        return sequenceKey(keyPrefix, day(timestamp()));
+    }
+
+    /**
+     * 拼接时间戳和序列号，用于在Lua脚本中自增序列号的场景（Lua数字为双精度浮点，无法精确表示64位id）
+     * @param timestamp 时间戳
+     * @param sequence 序列号
+     * @return id
+     */
+    public static long compose(long timestamp, long sequence) {
+        return timestamp << COUNT_BITS | sequence;
+    }
+
+    /**
+     * 从id中取出生成时间
+     * @param id id
+     * @return 生成时间，精确到秒
+     */
+    public static LocalDateTime time(long id) {
+        return LocalDateTime.ofEpochSecond((id >>> COUNT_BITS) + BEGIN_TIMESTAMP, 0, ZoneOffset.UTC);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        prefetchExecutor.shutdownNow();
+    }
+
+    /**
+     * 时间戳所在的日期，从1970-01-01起的天数
+     */
+    private static long day(long timestamp) {
+        return Math.floorDiv(timestamp + BEGIN_TIMESTAMP, SECONDS_PER_DAY);
+    }
+
+    private String sequenceKey(String keyPrefix, long day) {
+        FormattedDate date = formattedDate;
+        if (date.day != day) {
+            date = new FormattedDate(day, LocalDate.ofEpochDay(day).format(DATE_FORMATTER));
+            formattedDate = date;
+        }
+        return INCR_KEY + keyPrefix + ":" + date.text;
+    }
+
+    /**
+     * 号段模式分配序列号：在当前号段内无锁自增，号段用完或跨天时加锁切换到预取好的号段（没有则同步申请）
+     * @param keyPrefix 自增key前缀
+     * @param day 日期
+     * @return 序列号
+     */
+    private long nextSequence(String keyPrefix, long day) {
+        SegmentBuffer buffer = buffers.computeIfAbsent(keyPrefix, k -> new SegmentBuffer());
+        while (true) {
+            Segment segment = buffer.current;
+            if (segment != null && segment.day == day) {
+                long sequence = segment.cursor.getAndIncrement();
+                if (sequence <= segment.max) {
+                    if (sequence == segment.prefetchAt) {
+                        // 剩余比例到达阈值，只有分到这个序列号的线程触发预取
+                        prefetch(keyPrefix, buffer, day);
+                    }
+                    return sequence;
+                }
+            }
+            synchronized (buffer) {
+                if (buffer.current != segment) {
+                    // 其他线程已切换号段
+                    continue;
+                }
+                Segment next = buffer.next;
+                buffer.next = null;
+                if (next == null || next.day != day) {
+                    next = reserve(keyPrefix, day);
+                }
+                buffer.current = next;
+            }
+        }
+    }
+
+    private void prefetch(String keyPrefix, SegmentBuffer buffer, long day) {
+        if (!buffer.prefetching.compareAndSet(false, true)) {
+            return;
+        }
+        prefetchExecutor.execute(() -> {
+            try {
+                Segment segment = reserve(keyPrefix, day);
+                synchronized (buffer) {
+                    if (buffer.next == null) {
+                        buffer.next = segment;
+                    }
+                }
+            } catch (Exception e) {
+                // 预取失败不影响分配，号段用完时同步申请
+                log.warn("预取号段失败：{}", keyPrefix, e);
+            } finally {
+                buffer.prefetching.set(false);
+            }
+        });
+    }
+
+    /**
+     * 一次INCRBY预留一段序列号
+     */
+    private Segment reserve(String keyPrefix, long day) {
+        int step = idWorkerProperties.getStep();
+        long max = stringRedisTemplate.opsForValue().increment(sequenceKey(keyPrefix, day), step);
+        return new Segment(day, max - step + 1, max, max - (long) (step * idWorkerProperties.getPrefetchRatio()));
+    }
+
+    private static class FormattedDate {
+        private final long day;
+        private final String text;
+
+        private FormattedDate(long day, String text) {
+            this.day = day;
+            this.text = text;
+        }
+    }
+
+    /**
+     * 当前号段和预取的下一个号段
+     */
+    private static class SegmentBuffer {
+        private volatile Segment current;
+        private Segment next;
+        private final AtomicBoolean prefetching = new AtomicBoolean();
+    }
+
+    /**
+     * 一段序列号 [cursor, max]
+     */
+    private static class Segment {
+        private final long day;
+        private final AtomicLong cursor;
+        private final long max;
+        /**
+         * 分配到该序列号时预取下一个号段
+         */
+        private final long prefetchAt;
+
+        private Segment(long day, long start, long max, long prefetchAt) {
+            this.day = day;
+            this.cursor = new AtomicLong(start);
+            this.max = max;
+            this.prefetchAt = prefetchAt;
+        }
     }
 }
@@ -1,25 +1,18 @@
 package com.hmdp.utils;
 
-import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
 import com.hmdp.dto.UserDTO;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.HandlerInterceptor;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.Map;
-import java.util.concurrent.TimeUnit;
-
-import static com.hmdp.utils.RedisConstants.LOGIN_USER_KEY;
-import static com.hmdp.utils.RedisConstants.LOGIN_USER_TTL;
 
 public class RefreshTokenInterceptor implements HandlerInterceptor {
 
-    private final StringRedisTemplate stringRedisTemplate;
+    private final LoginSessionCache loginSessionCache;
 
-    public RefreshTokenInterceptor(StringRedisTemplate stringRedisTemplate) {
-        this.stringRedisTemplate = stringRedisTemplate;
+    public RefreshTokenInterceptor(LoginSessionCache loginSessionCache) {
+        this.loginSessionCache = loginSessionCache;
     }
 
     @Override
@@ -31,23 +24,17 @@ public class RefreshTokenInterceptor implements HandlerInterceptor {
             return true;
         }
 
-        // 通过token获取登录用户信息
-        Map<Object, Object> userMap = stringRedisTemplate.opsForHash().entries(LOGIN_USER_KEY + token);
+        // 通过token获取登录用户信息，先查本地缓存，未命中时查询Redis并按需刷新token有效期
+        UserDTO userDTO = loginSessionCache.get(token);
 
-        if (userMap.isEmpty()) {
+        if (userDTO == null) {
             // 无效token，没有得到登录用户信息，放行
             return true;
         }
 
-        // 封装登录信息
-        UserDTO userDTO = BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false);
-
         // 保存用户信息
         UserHolder.saveUser(userDTO);
 
-        // 刷新token有效期
-        stringRedisTemplate.expire(LOGIN_USER_KEY + token, LOGIN_USER_TTL, TimeUnit.DAYS);
-
         //放行
         return true;
     }
@@ -0,0 +1,236 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.SeckillProperties;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_LIMIT_KEY;
+
+/**
+ * 秒杀接口的准入控制，依次判断，任一拒绝即返回：
+ * 1. 用户限流：同一用户对同一秒杀券在间隔内只放行一次，本地判断，
+ *    放行记录按间隔分桶，只保留当前和上一个桶，过期的桶整个丢弃，不逐条清理；
+ * 2. 节点限流：每个秒杀券一个本地令牌桶，本地判断；
+ * 3. 全局限流：每个秒杀券一个Redis令牌桶，节点一次申请多个令牌在本地分配，
+ *    全局没有令牌时本节点退避一段时间，期间直接拒绝，不访问Redis
+ */
+@Component
+public class SeckillRateLimiter {
+
+    private static final DefaultRedisScript<Long> RATE_LIMIT_SCRIPT;
+    static {
+        RATE_LIMIT_SCRIPT = new DefaultRedisScript<>();
+        RATE_LIMIT_SCRIPT.setResultType(Long.class);
+        RATE_LIMIT_SCRIPT.setLocation(new ClassPathResource("rate_limit.lua"));
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final SeckillProperties.RateLimit properties;
+
+    /**
+     * 用户放行记录的当前桶和上一个桶
+     */
+    private volatile UserBuckets userBuckets = new UserBuckets(0, new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+
+    /**
+     * 优惠券id -> 本节点令牌桶
+     */
+    private final Map<Long, TokenBucket> localBuckets = new ConcurrentHashMap<>();
+
+    /**
+     * 优惠券id -> 从全局令牌桶申请到、尚未分配的令牌
+     */
+    private final Map<Long, Lease> leases = new ConcurrentHashMap<>();
+
+    private final LongAdder passed = new LongAdder();
+    private final LongAdder userRejects = new LongAdder();
+    private final LongAdder localRejects = new LongAdder();
+    private final LongAdder globalRejects = new LongAdder();
+    /**
+     * 退避期内直接拒绝、未访问Redis的次数，包含在 globalRejects 中
+     */
+    private final LongAdder backoffRejects = new LongAdder();
+    /**
+     * 访问全局令牌桶的次数
+     */
+    private final LongAdder globalCalls = new LongAdder();
+    /**
+     * 当前桶记录数达到上限而提前换桶的次数
+     */
+    private final LongAdder earlyRotations = new LongAdder();
+
+    public SeckillRateLimiter(StringRedisTemplate stringRedisTemplate, SeckillProperties seckillProperties) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.properties = seckillProperties.getRateLimit();
+    }
+
+    /**
+     * 判断请求是否放行
+     * @param voucherId 优惠券id
+     * @param userId 用户id
+     * @return 是否放行
+     */
+    public boolean tryAcquire(Long voucherId, Long userId) {
+        if (!properties.isEnabled()) {
+            return true;
+        }
+        if (!acquireUser(voucherId, userId)) {
+            userRejects.increment();
+            return false;
+        }
+        TokenBucket bucket = localBuckets.computeIfAbsent(voucherId,
+                id -> new TokenBucket(properties.getLocalRate(), properties.getLocalBurst()));
+        if (!bucket.tryAcquire()) {
+            localRejects.increment();
+            return false;
+        }
+        if (!acquireGlobal(voucherId)) {
+            globalRejects.increment();
+            return false;
+        }
+        passed.increment();
+        return true;
+    }
+
+    /**
+     * 限流统计
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("passed", passed.sum());
+        stats.put("userRejects", userRejects.sum());
+        stats.put("localRejects", localRejects.sum());
+        stats.put("globalRejects", globalRejects.sum());
+        stats.put("backoffRejects", backoffRejects.sum());
+        stats.put("globalCalls", globalCalls.sum());
+        UserBuckets buckets = userBuckets;
+        stats.put("trackedUsers", buckets.current.size() + buckets.previous.size());
+        stats.put("earlyRotations", earlyRotations.sum());
+        return stats;
+    }
+
+    private boolean acquireUser(Long voucherId, Long userId) {
+        long now = System.currentTimeMillis();
+        long interval = properties.getUserInterval().toMillis();
+        UserBuckets buckets = rotate(now, interval);
+        String key = voucherId + ":" + userId;
+        // 间隔内放行过的记录只可能在当前桶或上一个桶中
+        Long last = buckets.previous.get(key);
+        if (last != null && last > now - interval) {
+            return false;
+        }
+        boolean[] acquired = new boolean[1];
+        buckets.current.compute(key, (k, passedAt) -> {
+            if (passedAt != null && passedAt > now - interval) {
+                return passedAt;
+            }
+            acquired[0] = true;
+            return now;
+        });
+        return acquired[0];
+    }
+
+    /**
+     * 进入新的间隔时换桶：当前桶变为上一个桶，更早的桶整个丢弃；
+     * 一个间隔内的用户数达到上限时提前换桶，内存最多两个桶的上限，代价是被丢弃的桶中仍在间隔内的用户可能提前放行
+     */
+    private UserBuckets rotate(long now, long interval) {
+        UserBuckets buckets = userBuckets;
+        long index = now / interval;
+        if (buckets.index >= index && buckets.current.size() < properties.getUserMaxSize()) {
+            return buckets;
+        }
+        synchronized (this) {
+            buckets = userBuckets;
+            if (buckets.index < index) {
+                // 相邻的间隔保留当前桶作为上一个桶，跨过一个以上间隔时两个桶都已过期
+                Map<String, Long> previous = buckets.index == index - 1 ? buckets.current : new ConcurrentHashMap<>();
+                buckets = new UserBuckets(index, new ConcurrentHashMap<>(), previous);
+                userBuckets = buckets;
+            } else if (buckets.current.size() >= properties.getUserMaxSize()) {
+                earlyRotations.increment();
+                buckets = new UserBuckets(buckets.index, new ConcurrentHashMap<>(), buckets.current);
+                userBuckets = buckets;
+            }
+            return buckets;
+        }
+    }
+
+    private boolean acquireGlobal(Long voucherId) {
+        Lease lease = leases.computeIfAbsent(voucherId, id -> new Lease());
+        while (true) {
+            int remaining = lease.remaining.get();
+            if (remaining > 0) {
+                if (lease.remaining.compareAndSet(remaining, remaining - 1)) {
+                    return true;
+                }
+                continue;
+            }
+            if (System.currentTimeMillis() < lease.backoffUntil) {
+                backoffRejects.increment();
+                return false;
+            }
+            synchronized (lease) {
+                if (lease.remaining.get() > 0) {
+                    // 其他线程已申请到令牌
+                    continue;
+                }
+                long now = System.currentTimeMillis();
+                if (now < lease.backoffUntil) {
+                    backoffRejects.increment();
+                    return false;
+                }
+                globalCalls.increment();
+                Long granted = stringRedisTemplate.execute(RATE_LIMIT_SCRIPT,
+                        Collections.singletonList(SECKILL_LIMIT_KEY + voucherId),
+                        String.valueOf(properties.getGlobalRate()),
+                        String.valueOf(properties.getGlobalBurst()),
+                        String.valueOf(now),
+                        String.valueOf(properties.getLeaseSize()));
+                if (granted == null || granted <= 0) {
+                    lease.backoffUntil = now + properties.getLeaseBackoff().toMillis();
+                    return false;
+                }
+                // 自己用掉一个，其余留给本节点后续请求
+                lease.remaining.addAndGet((int) (granted - 1));
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 用户放行记录，优惠券id:用户id -> 放行时间
+     */
+    private static class UserBuckets {
+        /**
+         * 当前桶对应的间隔序号：时间 / 间隔
+         */
+        private final long index;
+        private final Map<String, Long> current;
+        private final Map<String, Long> previous;
+
+        private UserBuckets(long index, Map<String, Long> current, Map<String, Long> previous) {
+            this.index = index;
+            this.current = current;
+            this.previous = previous;
+        }
+    }
+
+    /**
+     * 从全局令牌桶申请到的令牌
+     */
+    private static class Lease {
+        private final AtomicInteger remaining = new AtomicInteger();
+        private volatile long backoffUntil;
+    }
+}
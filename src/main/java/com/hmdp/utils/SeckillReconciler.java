@@ -0,0 +1,274 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.dto.ReconcileReport;
+import com.hmdp.dto.VoucherOrderDTO;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.mapper.SeckillVoucherMapper;
+import com.hmdp.mapper.VoucherOrderMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 秒杀券Redis库存、用户集合（seckill:stock:*、seckill:order:*）与数据库 tb_voucher_order 的对账。
+ * 两个方向并行、分批进行，内存占用只与批大小有关：
+ * 1. 按 user_id 游标分页读取数据库订单，批量判断是否在Redis用户集合中，缺失的补回集合；
+ * 2. SSCAN 各分片的用户集合，按批 IN 查询数据库，没有订单且确定已丢失（订单失败，或秒杀结束超过宽限期仍没有订单缓存）
+ *    的用户撤销资格并归还库存；pending 的订单可能仍在溢出文件或MQ积压中，不论多久都不归还，
+ *    (voucher_id, user_id) 唯一索引保证归还后迟到的订单不会重复保存；
+ * 3. 修复用户集合后，按 数据库库存 + 订单数 = Redis库存 + 用户数 校验库存，只在秒杀时间窗口外修正
+ */
+@Slf4j
+@Component
+public class SeckillReconciler {
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final VoucherOrderMapper voucherOrderMapper;
+
+    private final SeckillVoucherMapper seckillVoucherMapper;
+
+    private final SeckillVoucherCache seckillVoucherCache;
+
+    private final SeckillStock seckillStock;
+
+    private final SeckillSoldOutGate seckillSoldOutGate;
+
+    private final UserOrderCache userOrderCache;
+
+    private final SeckillProperties.Reconcile properties;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "seckill-reconcile");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SeckillReconciler(StringRedisTemplate stringRedisTemplate, VoucherOrderMapper voucherOrderMapper,
+                             SeckillVoucherMapper seckillVoucherMapper, SeckillVoucherCache seckillVoucherCache,
+                             SeckillStock seckillStock, SeckillSoldOutGate seckillSoldOutGate,
+                             UserOrderCache userOrderCache, SeckillProperties seckillProperties) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.voucherOrderMapper = voucherOrderMapper;
+        this.seckillVoucherMapper = seckillVoucherMapper;
+        this.seckillVoucherCache = seckillVoucherCache;
+        this.seckillStock = seckillStock;
+        this.seckillSoldOutGate = seckillSoldOutGate;
+        this.userOrderCache = userOrderCache;
+        this.properties = seckillProperties.getReconcile();
+    }
+
+    /**
+     * 对账一个秒杀券
+     * @param voucherId 优惠券id
+     * @param repair 是否修复差异，false时只报告
+     * @return 对账结果，秒杀券不存在返回null
+     */
+    public ReconcileReport reconcile(Long voucherId, boolean repair) {
+        SeckillVoucher voucher = seckillVoucherCache.get(voucherId);
+        if (voucher == null) {
+            return null;
+        }
+        long begin = System.currentTimeMillis();
+        int shards = voucher.getStockShards() == null ? 1 : voucher.getStockShards();
+        ReconcileReport report = new ReconcileReport().setVoucherId(voucherId).setRepair(repair);
+        // 两个方向互不依赖，并行执行；各自只写报告中自己的字段
+        CompletableFuture<Void> dbToRedis = CompletableFuture.runAsync(
+                () -> checkDbOrders(voucherId, shards, repair, report), executor);
+        CompletableFuture<Void> redisToDb = CompletableFuture.runAsync(
+                () -> checkRedisUsers(voucher, shards, repair, report), executor);
+        CompletableFuture.allOf(dbToRedis, redisToDb).join();
+        checkStock(voucher, shards, repair, report);
+        report.setCost(System.currentTimeMillis() - begin);
+        log.info("秒杀券对账完成：{}", report);
+        return report;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 数据库 -> Redis：按 user_id 游标分页，select user_id from tb_voucher_order where voucher_id = ? and user_id > ? order by user_id limit ?
+     */
+    private void checkDbOrders(Long voucherId, int shards, boolean repair, ReconcileReport report) {
+        int pageSize = properties.getPageSize();
+        long lastUserId = 0;
+        long count = 0;
+        long missing = 0;
+        List<Long> samples = new ArrayList<>();
+        while (true) {
+            List<Object> objs = voucherOrderMapper.selectObjs(new QueryWrapper<VoucherOrder>()
+                    .select("user_id")
+                    .eq("voucher_id", voucherId)
+                    .gt("user_id", lastUserId)
+                    .orderByAsc("user_id")
+                    .last("limit " + pageSize));
+            if (objs.isEmpty()) {
+                break;
+            }
+            List<Long> userIds = new ArrayList<>(objs.size());
+            for (Object obj : objs) {
+                userIds.add(((Number) obj).longValue());
+            }
+            lastUserId = userIds.get(userIds.size() - 1);
+            count += userIds.size();
+            List<Boolean> contains = seckillStock.contains(voucherId, userIds, shards);
+            List<Long> absent = new ArrayList<>();
+            for (int i = 0; i < userIds.size(); i++) {
+                if (!contains.get(i)) {
+                    absent.add(userIds.get(i));
+                }
+            }
+            missing += absent.size();
+            addSamples(samples, absent);
+            if (repair && !absent.isEmpty()) {
+                seckillStock.grant(voucherId, absent, shards);
+            }
+            if (objs.size() < pageSize) {
+                break;
+            }
+        }
+        report.setDbOrders(count).setMissingInRedis(missing).setMissingInRedisSamples(samples);
+    }
+
+    /**
+     * Redis -> 数据库：SSCAN 各分片的用户集合，每批一次 IN 查询
+     */
+    private void checkRedisUsers(SeckillVoucher voucher, int shards, boolean repair, ReconcileReport report) {
+        int pageSize = properties.getPageSize();
+        // 各项计数：扫描用户数、缺失数、处理中数
+        long[] counts = new long[3];
+        List<Long> samples = new ArrayList<>();
+        for (String key : seckillStock.usersKeys(voucher.getVoucherId(), shards)) {
+            List<Long> batch = new ArrayList<>(pageSize);
+            try (Cursor<String> cursor = stringRedisTemplate.opsForSet()
+                    .scan(key, ScanOptions.scanOptions().count(pageSize).build())) {
+                while (cursor.hasNext()) {
+                    batch.add(Long.valueOf(cursor.next()));
+                    if (batch.size() >= pageSize) {
+                        checkUsers(voucher, shards, batch, repair, counts, samples);
+                        batch.clear();
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                checkUsers(voucher, shards, batch, repair, counts, samples);
+            }
+        }
+        report.setRedisUsers(counts[0]).setMissingInDb(counts[1]).setMissingInDbSamples(samples)
+                .setInFlight(counts[2]);
+    }
+
+    private void checkUsers(SeckillVoucher voucher, int shards, List<Long> userIds, boolean repair,
+                            long[] counts, List<Long> samples) {
+        Long voucherId = voucher.getVoucherId();
+        counts[0] += userIds.size();
+        Set<Long> persisted = new HashSet<>();
+        for (Object obj : voucherOrderMapper.selectObjs(new QueryWrapper<VoucherOrder>()
+                .select("user_id")
+                .eq("voucher_id", voucherId)
+                .in("user_id", userIds))) {
+            persisted.add(((Number) obj).longValue());
+        }
+        LocalDateTime graceLine = LocalDateTime.now().minus(properties.getPendingGrace());
+        List<Long> lost = new ArrayList<>();
+        boolean restored = false;
+        for (Long userId : userIds) {
+            if (persisted.contains(userId)) {
+                continue;
+            }
+            VoucherOrderDTO order = userOrderCache.find(userId, voucherId);
+            if (isInFlight(order, voucher, graceLine)) {
+                counts[2]++;
+                continue;
+            }
+            lost.add(userId);
+            if (repair && seckillStock.restore(voucherId, userId, shards)) {
+                restored = true;
+                if (order != null) {
+                    userOrderCache.failed(new VoucherOrder()
+                            .setId(order.getId())
+                            .setUserId(userId)
+                            .setVoucherId(voucherId));
+                }
+            }
+        }
+        counts[1] += lost.size();
+        addSamples(samples, lost);
+        if (restored) {
+            // 归还了库存，清除售罄标记
+            seckillSoldOutGate.reset(voucherId);
+        }
+    }
+
+    /**
+     * Redis中有、数据库中没有的订单是否仍在处理中：
+     * 有订单缓存时，只有 failed 视为丢失，pending 可能还在溢出文件或MQ积压中，一直视为处理中；
+     * 没有订单缓存时（脚本执行后、写入订单缓存前），秒杀结束超过宽限期之前都视为处理中
+     */
+    private boolean isInFlight(VoucherOrderDTO order, SeckillVoucher voucher, LocalDateTime graceLine) {
+        if (order == null) {
+            return !voucher.getEndTime().isBefore(graceLine);
+        }
+        return !VoucherOrderDTO.FAILED.equals(order.getState());
+    }
+
+    /**
+     * 库存校验：数据库与Redis各自满足 库存 + 已售 = 初始库存，两边之差即库存差异
+     */
+    private void checkStock(SeckillVoucher voucher, int shards, boolean repair, ReconcileReport report) {
+        Long voucherId = voucher.getVoucherId();
+        SeckillVoucher dbVoucher = seckillVoucherMapper.selectById(voucherId);
+        long dbStock = dbVoucher == null ? 0 : dbVoucher.getStock();
+        long dbCount = voucherOrderMapper.selectCount(new QueryWrapper<VoucherOrder>().eq("voucher_id", voucherId));
+        long redisStock = seckillStock.totalStock(voucherId, shards);
+        long redisUsers = 0;
+        for (String key : seckillStock.usersKeys(voucherId, shards)) {
+            Long size = stringRedisTemplate.opsForSet().size(key);
+            redisUsers += size == null ? 0 : size;
+        }
+        long drift = (dbStock + dbCount) - (redisStock + redisUsers);
+        report.setDbStock(dbStock).setRedisStock(redisStock).setStockDrift(drift).setStockRepaired(false);
+        if (!repair || drift == 0) {
+            return;
+        }
+        // 秒杀进行中或刚结束时两边的读取不是同一时刻，差值不可信，不修正
+        LocalDateTime now = LocalDateTime.now();
+        if (!now.isBefore(voucher.getBeginTime())
+                && !now.isAfter(voucher.getEndTime().plus(properties.getPendingGrace()))) {
+            log.warn("秒杀券{}库存差值{}，秒杀进行中，不修正", voucherId, drift);
+            return;
+        }
+        seckillStock.adjust(voucherId, drift, shards);
+        if (drift > 0) {
+            seckillSoldOutGate.reset(voucherId);
+        }
+        report.setStockRepaired(true);
+    }
+
+    private void addSamples(List<Long> samples, List<Long> userIds) {
+        for (Long userId : userIds) {
+            if (samples.size() >= properties.getSampleSize()) {
+                return;
+            }
+            samples.add(userId);
+        }
+    }
+}
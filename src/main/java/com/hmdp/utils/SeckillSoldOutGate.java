@@ -0,0 +1,85 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.SeckillProperties;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_RESET_CHANNEL;
+
+/**
+ * 秒杀券售罄的本地标记：Lua脚本返回库存不足时标记并广播，之后本节点直接拒绝该券的请求，不查数据库也不访问Redis。
+ * 补充库存时广播清除标记；标记带有效期，广播乱序导致的错误标记最多持续一个有效期，期满后由下一次Lua脚本重新判断
+ */
+@Component
+public class SeckillSoldOutGate {
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 售罄标记的有效期（毫秒）
+     */
+    private final long ttlMillis;
+
+    /**
+     * 售罄的优惠券id -> 标记过期时间
+     */
+    private final Map<Long, Long> soldOut = new ConcurrentHashMap<>();
+
+    public SeckillSoldOutGate(StringRedisTemplate stringRedisTemplate, SeckillProperties seckillProperties,
+                              RedisMessageListenerContainer listenerContainer) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.ttlMillis = seckillProperties.getSoldOutTtl().toMillis();
+        // 订阅售罄广播
+        listenerContainer.addMessageListener((message, pattern) ->
+                        soldOut.put(parseId(message.getBody()), System.currentTimeMillis() + ttlMillis),
+                new ChannelTopic(SECKILL_SOLD_OUT_CHANNEL));
+        // 订阅补充库存广播
+        listenerContainer.addMessageListener((message, pattern) -> soldOut.remove(parseId(message.getBody())),
+                new ChannelTopic(SECKILL_STOCK_RESET_CHANNEL));
+    }
+
+    /**
+     * 优惠券是否已售罄
+     * @param voucherId 优惠券id
+     */
+    public boolean isSoldOut(Long voucherId) {
+        Long expireAt = soldOut.get(voucherId);
+        if (expireAt == null) {
+            return false;
+        }
+        if (expireAt < System.currentTimeMillis()) {
+            soldOut.remove(voucherId, expireAt);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 标记售罄，并广播给其他节点
+     * @param voucherId 优惠券id
+     */
+    public void markSoldOut(Long voucherId) {
+        soldOut.put(voucherId, System.currentTimeMillis() + ttlMillis);
+        stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, voucherId.toString());
+    }
+
+    /**
+     * 补充库存后清除售罄标记，并广播给其他节点
+     * @param voucherId 优惠券id
+     */
+    public void reset(Long voucherId) {
+        soldOut.remove(voucherId);
+        stringRedisTemplate.convertAndSend(SECKILL_STOCK_RESET_CHANNEL, voucherId.toString());
+    }
+
+    private Long parseId(byte[] body) {
+        return Long.valueOf(new String(body, StandardCharsets.UTF_8));
+    }
+}
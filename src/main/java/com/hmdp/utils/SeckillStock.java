@@ -0,0 +1,347 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.entity.SeckillVoucher;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+
+/**
+ * 秒杀券在Redis中的库存与一人一单校验。
+ * 不分片时库存为 seckill:stock:{voucherId}，用户集合为 seckill:order:{voucherId}；
+ * 分片时库存拆为K个 seckill:stock:{voucherId:i}，用户按id固定归属一个分片，用户集合同样拆为 seckill:order:{voucherId:i}，
+ * 同一分片的两个key哈希标签相同，在集群中位于同一个槽，不同分片可以分布到不同节点
+ */
+@Component
+public class SeckillStock {
+
+    /**
+     * 秒杀Lua脚本（判断秒杀时间，判断库存，一人一单）
+     */
+    private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
+    /**
+     * 分片库存的秒杀脚本，在用户所属分片上判断时间、一人一单并扣减库存
+     */
+    private static final DefaultRedisScript<Long> SECKILL_SHARD_SCRIPT;
+    /**
+     * 从指定分片扣减一个库存
+     */
+    private static final DefaultRedisScript<Long> STOCK_TAKE_SCRIPT;
+    /**
+     * 撤销用户的秒杀资格并归还库存
+     */
+    private static final DefaultRedisScript<Long> STOCK_RESTORE_SCRIPT;
+    /**
+     * 写入订单Stream并裁剪长度
+     */
+    private static final DefaultRedisScript<String> STREAM_ADD_SCRIPT;
+    static {
+        SECKILL_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_SCRIPT.setResultType(Long.class);
+        SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
+        SECKILL_SHARD_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_SHARD_SCRIPT.setResultType(Long.class);
+        SECKILL_SHARD_SCRIPT.setLocation(new ClassPathResource("seckill_shard.lua"));
+        STOCK_TAKE_SCRIPT = new DefaultRedisScript<>();
+        STOCK_TAKE_SCRIPT.setResultType(Long.class);
+        STOCK_TAKE_SCRIPT.setLocation(new ClassPathResource("stock_take.lua"));
+        STOCK_RESTORE_SCRIPT = new DefaultRedisScript<>();
+        STOCK_RESTORE_SCRIPT.setResultType(Long.class);
+        STOCK_RESTORE_SCRIPT.setLocation(new ClassPathResource("stock_restore.lua"));
+        STREAM_ADD_SCRIPT = new DefaultRedisScript<>();
+        STREAM_ADD_SCRIPT.setResultType(String.class);
+        STREAM_ADD_SCRIPT.setLocation(new ClassPathResource("stream_add.lua"));
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final RedisIdWorker redisIdWorker;
+
+    /**
+     * 订单Stream的key
+     */
+    private final String streamKey;
+
+    /**
+     * 订单Stream的长度上限
+     */
+    private final String streamMaxLen;
+
+    public SeckillStock(StringRedisTemplate stringRedisTemplate, RedisIdWorker redisIdWorker,
+                        SeckillProperties seckillProperties) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.redisIdWorker = redisIdWorker;
+        this.streamKey = seckillProperties.getStream().getKey();
+        this.streamMaxLen = String.valueOf(seckillProperties.getStream().getMaxLen());
+    }
+
+    /**
+     * 初始化库存，分片时平均分配到各分片
+     * @param voucherId 优惠券id
+     * @param stock 库存
+     * @param shards 分片数
+     */
+    public void init(Long voucherId, int stock, int shards) {
+        if (shards <= 1) {
+            stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY + voucherId, String.valueOf(stock));
+            return;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < shards; i++) {
+                connection.stringCommands().set(bytes(stockKey(voucherId, i)), bytes(String.valueOf(split(stock, shards, i))));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 补充库存，分片时平均分配到各分片
+     * @param voucherId 优惠券id
+     * @param count 补充数量
+     * @param shards 分片数
+     */
+    public void add(Long voucherId, int count, int shards) {
+        if (shards <= 1) {
+            stringRedisTemplate.opsForValue().increment(SECKILL_STOCK_KEY + voucherId, count);
+            return;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < shards; i++) {
+                connection.stringCommands().incrBy(bytes(stockKey(voucherId, i)), split(count, shards, i));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 判断秒杀时间、一人一单并扣减库存
+     * @param voucher 秒杀券，需要 voucherId、beginTime、endTime、stockShards
+     * @param userId 用户id
+     * @return 0：成功；1：库存不足；2：重复下单；3：秒杀券不存在；4：尚未开始；5：已经结束
+     */
+    public int deduct(SeckillVoucher voucher, Long userId) {
+        Long voucherId = voucher.getVoucherId();
+        String now = String.valueOf(System.currentTimeMillis());
+        int shards = voucher.getStockShards() == null ? 1 : voucher.getStockShards();
+        if (shards <= 1) {
+            Long result = stringRedisTemplate.execute(SECKILL_SCRIPT,
+                    Collections.emptyList(),
+                    userId.toString(),
+                    voucherId.toString(),
+                    now);
+            assert result != null;
+            return result.intValue();
+        }
+        // 用户固定归属一个分片，一人一单只需在该分片的用户集合中判断
+        int home = home(userId, shards);
+        Long result = stringRedisTemplate.execute(SECKILL_SHARD_SCRIPT,
+                Arrays.asList(stockKey(voucherId, home), usersKey(voucherId, home)),
+                userId.toString(),
+                String.valueOf(toMillis(voucher.getBeginTime())),
+                String.valueOf(toMillis(voucher.getEndTime())),
+                now);
+        assert result != null;
+        if (result != 1) {
+            return result.intValue();
+        }
+        // 所属分片库存不足，依次从其他分片扣减
+        for (int i = 1; i < shards; i++) {
+            Long taken = stringRedisTemplate.execute(STOCK_TAKE_SCRIPT,
+                    Collections.singletonList(stockKey(voucherId, (home + i) % shards)));
+            if (taken != null && taken == 0) {
+                return 0;
+            }
+        }
+        // 所有分片都没有库存，撤销用户占位
+        stringRedisTemplate.opsForSet().remove(usersKey(voucherId, home), userId.toString());
+        return 1;
+    }
+
+    /**
+     * 判断秒杀时间、一人一单并扣减库存，成功时生成订单id并将订单写入Stream。
+     * 不分片时在同一次脚本调用中完成；分片时库存与Stream不在同一个槽，扣减成功后再生成id、写入Stream
+     * @param voucher 秒杀券，需要 voucherId、beginTime、endTime、stockShards
+     * @param userId 用户id
+     * @return 成功返回订单id；失败返回错误码，含义同 {@link #deduct}
+     */
+    public long deductAndEnqueue(SeckillVoucher voucher, Long userId) {
+        Long voucherId = voucher.getVoucherId();
+        long timestamp = redisIdWorker.timestamp();
+        String sequenceKey = redisIdWorker.sequenceKey("order");
+        int shards = voucher.getStockShards() == null ? 1 : voucher.getStockShards();
+        if (shards <= 1) {
+            Long result = stringRedisTemplate.execute(SECKILL_SCRIPT,
+                    Collections.emptyList(),
+                    userId.toString(),
+                    voucherId.toString(),
+                    String.valueOf(System.currentTimeMillis()),
+                    streamKey,
+                    sequenceKey,
+                    String.valueOf(timestamp),
+                    streamMaxLen);
+            assert result != null;
+            // 成功时脚本返回序列号的相反数
+            return result < 0 ? RedisIdWorker.compose(timestamp, -result) : result;
+        }
+        int r = deduct(voucher, userId);
+        if (r != 0) {
+            return r;
+        }
+        Long sequence = stringRedisTemplate.opsForValue().increment(sequenceKey);
+        stringRedisTemplate.execute(STREAM_ADD_SCRIPT, Collections.singletonList(streamKey), streamMaxLen,
+                "userId", userId.toString(),
+                "voucherId", voucherId.toString(),
+                "timestamp", String.valueOf(timestamp),
+                "sequence", String.valueOf(sequence));
+        return RedisIdWorker.compose(timestamp, sequence);
+    }
+
+    /**
+     * 剩余库存总量，各分片之和
+     * @param voucherId 优惠券id
+     * @param shards 分片数
+     * @return 库存
+     */
+    public long totalStock(Long voucherId, int shards) {
+        List<String> keys = new ArrayList<>(Math.max(shards, 1));
+        for (int i = 0; i < Math.max(shards, 1); i++) {
+            keys.add(stockKey(voucherId, shards, i));
+        }
+        List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
+        long total = 0;
+        if (values != null) {
+            for (String value : values) {
+                total += value == null ? 0 : Long.parseLong(value);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 所有分片的用户集合key
+     * @param voucherId 优惠券id
+     * @param shards 分片数
+     * @return 用户集合key
+     */
+    public List<String> usersKeys(Long voucherId, int shards) {
+        List<String> keys = new ArrayList<>(Math.max(shards, 1));
+        for (int i = 0; i < Math.max(shards, 1); i++) {
+            keys.add(usersKey(voucherId, shards, i));
+        }
+        return keys;
+    }
+
+    /**
+     * 批量判断用户是否已下单（在所属分片的用户集合中），一次管道完成
+     * @param voucherId 优惠券id
+     * @param userIds 用户id
+     * @param shards 分片数
+     * @return 与 userIds 一一对应
+     */
+    public List<Boolean> contains(Long voucherId, List<Long> userIds, int shards) {
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Long userId : userIds) {
+                connection.setCommands().sIsMember(bytes(usersKey(voucherId, shards, home(userId, shards))),
+                        bytes(userId.toString()));
+            }
+            return null;
+        });
+        List<Boolean> contains = new ArrayList<>(results.size());
+        for (Object result : results) {
+            contains.add(Boolean.TRUE.equals(result));
+        }
+        return contains;
+    }
+
+    /**
+     * 将用户加入所属分片的用户集合，不扣减库存，用于数据库中已有订单而Redis中没有记录的修复
+     * @param voucherId 优惠券id
+     * @param userIds 用户id
+     * @param shards 分片数
+     */
+    public void grant(Long voucherId, List<Long> userIds, int shards) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Long userId : userIds) {
+                connection.setCommands().sAdd(bytes(usersKey(voucherId, shards, home(userId, shards))),
+                        bytes(userId.toString()));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 撤销用户的秒杀资格并归还一个库存到所属分片，用于订单保存失败的修复
+     * @param voucherId 优惠券id
+     * @param userId 用户id
+     * @param shards 分片数
+     * @return 用户不在集合中（已撤销过）返回false
+     */
+    public boolean restore(Long voucherId, Long userId, int shards) {
+        int home = home(userId, shards);
+        Long result = stringRedisTemplate.execute(STOCK_RESTORE_SCRIPT,
+                Arrays.asList(stockKey(voucherId, shards, home), usersKey(voucherId, shards, home)),
+                userId.toString());
+        return result != null && result == 1;
+    }
+
+    /**
+     * 按差值修正库存，差值记在第一个分片上
+     * @param voucherId 优惠券id
+     * @param delta 差值，可以为负
+     * @param shards 分片数
+     */
+    public void adjust(Long voucherId, long delta, int shards) {
+        stringRedisTemplate.opsForValue().increment(stockKey(voucherId, shards, 0), delta);
+    }
+
+    /**
+     * 用户所属的分片
+     */
+    private static int home(Long userId, int shards) {
+        return shards <= 1 ? 0 : (int) Math.floorMod(userId, (long) shards);
+    }
+
+    /**
+     * 总量平均拆分到各分片，余数分给前面的分片
+     */
+    private static int split(int total, int shards, int index) {
+        return total / shards + (index < total % shards ? 1 : 0);
+    }
+
+    private static String stockKey(Long voucherId, int shard) {
+        return SECKILL_STOCK_KEY + "{" + voucherId + ":" + shard + "}";
+    }
+
+    private static String usersKey(Long voucherId, int shard) {
+        return SECKILL_ORDER_KEY + "{" + voucherId + ":" + shard + "}";
+    }
+
+    private static String stockKey(Long voucherId, int shards, int shard) {
+        return shards <= 1 ? SECKILL_STOCK_KEY + voucherId : stockKey(voucherId, shard);
+    }
+
+    private static String usersKey(Long voucherId, int shards, int shard) {
+        return shards <= 1 ? SECKILL_ORDER_KEY + voucherId : usersKey(voucherId, shard);
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,128 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.mapper.SeckillVoucherMapper;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_VOUCHER_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_VOUCHER_KEY;
+
+/**
+ * 秒杀券的时间窗口缓存，秒杀请求不再查询数据库。
+ * Redis中为hash结构 seckill:voucher:{id}，字段 begin、end 为毫秒时间戳，供秒杀脚本校验，shards 为库存分片数（同时保存在 tb_seckill_voucher.stock_shards）；本地缓存用于在访问Redis之前拒绝未开始、已结束的请求。
+ * 新增秒杀券时写入并广播，各节点清除本地缓存（包括不存在的空值）；缓存中没有的历史秒杀券首次访问时从数据库加载一次。
+ * 不存在的空值只在本地缓存几秒，广播丢失时新建的秒杀券最多在这段时间内被拒绝
+ */
+@Component
+public class SeckillVoucherCache {
+
+    /**
+     * 不存在的秒杀券，本地缓存的空值
+     */
+    private static final SeckillVoucher NOT_EXISTS = new SeckillVoucher();
+
+    /**
+     * 不存在的空值在本地缓存的时间
+     */
+    private static final long NOT_EXISTS_TTL_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final SeckillVoucherMapper seckillVoucherMapper;
+
+    private final LocalCache localCache = new LocalCache(1000, TimeUnit.MINUTES.toMillis(1));
+
+    public SeckillVoucherCache(StringRedisTemplate stringRedisTemplate, SeckillVoucherMapper seckillVoucherMapper,
+                               RedisMessageListenerContainer listenerContainer) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.seckillVoucherMapper = seckillVoucherMapper;
+        // 订阅新增秒杀券广播，清除本地缓存
+        listenerContainer.addMessageListener((message, pattern) ->
+                        localCache.invalidate(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(SECKILL_VOUCHER_CHANNEL));
+    }
+
+    /**
+     * 新增秒杀券后调用：写入时间窗口到Redis和本地缓存，并广播给其他节点
+     * @param voucher 秒杀券，需要 voucherId、beginTime、endTime，stockShards 为空表示不分片
+     */
+    public void put(SeckillVoucher voucher) {
+        save(voucher);
+        stringRedisTemplate.convertAndSend(SECKILL_VOUCHER_CHANNEL, voucher.getVoucherId().toString());
+    }
+
+    /**
+     * 写入秒杀券的时间窗口到Redis和本地缓存
+     * @return 写入本地缓存的时间窗口
+     */
+    private SeckillVoucher save(SeckillVoucher voucher) {
+        int shards = voucher.getStockShards() == null ? 1 : voucher.getStockShards();
+        Map<String, String> window = new HashMap<>(4);
+        window.put("begin", String.valueOf(toMillis(voucher.getBeginTime())));
+        window.put("end", String.valueOf(toMillis(voucher.getEndTime())));
+        window.put("shards", String.valueOf(shards));
+        stringRedisTemplate.opsForHash().putAll(SECKILL_VOUCHER_KEY + voucher.getVoucherId(), window);
+        SeckillVoucher cached = window(voucher.getVoucherId(), voucher.getBeginTime(), voucher.getEndTime(), shards);
+        localCache.put(voucher.getVoucherId().toString(), cached);
+        return cached;
+    }
+
+    /**
+     * 查询秒杀券的时间窗口：本地缓存 -> Redis -> 数据库
+     * @param voucherId 优惠券id
+     * @return 只包含 voucherId、beginTime、endTime、stockShards 的秒杀券，不存在返回null
+     */
+    public SeckillVoucher get(Long voucherId) {
+        String key = voucherId.toString();
+        Object local = localCache.get(key);
+        if (local != null) {
+            return local == NOT_EXISTS ? null : (SeckillVoucher) local;
+        }
+        List<Object> values = stringRedisTemplate.opsForHash()
+                .multiGet(SECKILL_VOUCHER_KEY + voucherId, Arrays.asList("begin", "end", "shards"));
+        if (values.get(0) != null && values.get(1) != null) {
+            SeckillVoucher voucher = window(voucherId,
+                    toTime(Long.parseLong(values.get(0).toString())), toTime(Long.parseLong(values.get(1).toString())),
+                    values.get(2) == null ? 1 : Integer.parseInt(values.get(2).toString()));
+            localCache.put(key, voucher);
+            return voucher;
+        }
+        // Redis中没有，历史数据，从数据库加载一次
+        SeckillVoucher voucher = seckillVoucherMapper.selectById(voucherId);
+        if (voucher == null) {
+            localCache.put(key, NOT_EXISTS, NOT_EXISTS_TTL_MILLIS);
+            return null;
+        }
+        // 返回写入缓存的时间窗口，分片数为空时已按不分片处理
+        return save(voucher);
+    }
+
+    private SeckillVoucher window(Long voucherId, LocalDateTime beginTime, LocalDateTime endTime, int shards) {
+        return new SeckillVoucher()
+                .setVoucherId(voucherId)
+                .setBeginTime(beginTime)
+                .setEndTime(endTime)
+                .setStockShards(shards);
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static LocalDateTime toTime(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+}
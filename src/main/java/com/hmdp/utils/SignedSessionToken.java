@@ -0,0 +1,259 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.RandomUtil;
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.config.LoginProperties;
+import com.hmdp.dto.UserDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_DENY_CHANNEL;
+import static com.hmdp.utils.RedisConstants.LOGIN_DENY_KEY;
+
+/**
+ * 签名登录token，hmdp.login.token.mode=signed 时使用：
+ * token = base64url(载荷) + "." + base64url(HMAC-SHA256(载荷) 前16字节)，载荷为 版本(1) + 过期时间(8) + 用户id(8) + 昵称 + 头像。
+ * 校验只做一次HMAC，不访问Redis，Redis中也不保存会话。
+ * 退出登录的token以签名为id进入黑名单：Redis中为zset login:deny，分数为token过期时间，
+ * 各节点启动时加载并订阅新增，在本地判断；订阅消息可能丢失，定时从zset重新加载，同时清理过期的记录。
+ * token id 取解码后的签名重新编码的结果，而不是token中的原文：base64最后一个字符的低位不参与解码，
+ * 只改这几位的token签名相同、原文不同
+ */
+@Slf4j
+@Component
+public class SignedSessionToken {
+
+    private static final byte VERSION = 1;
+
+    /**
+     * 签名截取的字节数
+     */
+    private static final int MAC_LENGTH = 16;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final LoginProperties.Token properties;
+
+    /**
+     * Mac不是线程安全的，每个线程一个
+     */
+    private final ThreadLocal<Mac> macs;
+
+    /**
+     * 本地黑名单，token id -> 过期时间（秒）
+     */
+    private final Map<String, Long> denied = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "login-deny-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SignedSessionToken(StringRedisTemplate stringRedisTemplate, LoginProperties loginProperties,
+                              RedisMessageListenerContainer listenerContainer) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.properties = loginProperties.getToken();
+        String secret = properties.getSecret();
+        if (StrUtil.isBlank(secret)) {
+            secret = RandomUtil.randomString(32);
+            if (isEnabled()) {
+                log.warn("未配置 hmdp.login.token.secret，使用随机密钥，重启或其他节点签发的token无法校验");
+            }
+        }
+        SecretKeySpec key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        // 订阅黑名单新增，消息格式 {tokenId}:{过期时间}
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            int index = body.lastIndexOf(':');
+            denied.put(body.substring(0, index), Long.parseLong(body.substring(index + 1)));
+        }, new ChannelTopic(LOGIN_DENY_CHANNEL));
+    }
+
+    @PostConstruct
+    private void init() {
+        if (!isEnabled()) {
+            return;
+        }
+        // 加载未过期的黑名单
+        load(now());
+        long interval = properties.getDenySyncInterval().toMillis();
+        syncer.scheduleWithFixedDelay(this::sync, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        syncer.shutdownNow();
+    }
+
+    /**
+     * 是否使用签名token
+     */
+    public boolean isEnabled() {
+        return "signed".equals(properties.getMode());
+    }
+
+    /**
+     * 签发token
+     * @param user 登录用户
+     * @return token
+     */
+    public String issue(UserDTO user) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeLong(now() + properties.getTtl().getSeconds());
+            out.writeLong(user.getId());
+            out.writeUTF(StrUtil.nullToEmpty(user.getNickName()));
+            out.writeUTF(StrUtil.nullToEmpty(user.getIcon()));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] payload = bytes.toByteArray();
+        return ENCODER.encodeToString(payload) + "." + ENCODER.encodeToString(sign(payload));
+    }
+
+    /**
+     * 校验token
+     * @param token token
+     * @return 登录用户，签名错误、已过期、已退出登录返回null
+     */
+    public UserDTO verify(String token) {
+        int dot = token.indexOf('.');
+        if (dot <= 0) {
+            return null;
+        }
+        byte[] payload;
+        byte[] mac;
+        try {
+            payload = DECODER.decode(token.substring(0, dot));
+            mac = DECODER.decode(token.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        // 先校验签名，再解析载荷
+        if (!MessageDigest.isEqual(mac, sign(payload))) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            if (in.readByte() != VERSION) {
+                return null;
+            }
+            long expireAt = in.readLong();
+            if (expireAt < now() || denied.containsKey(ENCODER.encodeToString(mac))) {
+                return null;
+            }
+            UserDTO user = new UserDTO();
+            user.setId(in.readLong());
+            user.setNickName(in.readUTF());
+            user.setIcon(in.readUTF());
+            return user;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 退出登录，token进入黑名单直到过期
+     * @param token token
+     */
+    public void revoke(String token) {
+        int dot = token.indexOf('.');
+        if (dot <= 0 || verify(token) == null) {
+            // 无效token不需要加入黑名单
+            return;
+        }
+        long expireAt;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(DECODER.decode(token.substring(0, dot))))) {
+            in.readByte();
+            expireAt = in.readLong();
+        } catch (IOException e) {
+            return;
+        }
+        // 按规范编码的签名作为id，与 verify 一致
+        String tokenId = ENCODER.encodeToString(DECODER.decode(token.substring(dot + 1)));
+        denied.put(tokenId, expireAt);
+        stringRedisTemplate.opsForZSet().add(LOGIN_DENY_KEY, tokenId, expireAt);
+        stringRedisTemplate.convertAndSend(LOGIN_DENY_CHANNEL, tokenId + ":" + expireAt);
+    }
+
+    /**
+     * 本地黑名单的条数
+     */
+    public int deniedSize() {
+        return denied.size();
+    }
+
+    private byte[] sign(byte[] payload) {
+        return Arrays.copyOf(macs.get().doFinal(payload), MAC_LENGTH);
+    }
+
+    /**
+     * 从zset重新加载黑名单，补上丢失的订阅消息；清理已过期的黑名单，token过期后本身就无法通过校验
+     */
+    private void sync() {
+        try {
+            long now = now();
+            stringRedisTemplate.opsForZSet().removeRangeByScore(LOGIN_DENY_KEY, 0, now - 1);
+            load(now);
+            denied.values().removeIf(expireAt -> expireAt < now);
+        } catch (Exception e) {
+            log.warn("同步登录黑名单失败", e);
+        }
+    }
+
+    /**
+     * 加载Redis中未过期的黑名单，只增加不删除
+     */
+    private void load(long now) {
+        Set<ZSetOperations.TypedTuple<String>> tuples = stringRedisTemplate.opsForZSet()
+                .rangeByScoreWithScores(LOGIN_DENY_KEY, now, Double.MAX_VALUE);
+        if (tuples != null) {
+            for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                denied.put(tuple.getValue(), tuple.getScore().longValue());
+            }
+        }
+    }
+
+    private static long now() {
+        return System.currentTimeMillis() / 1000;
+    }
+}
@@ -0,0 +1,113 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 滑动窗口 Count-Min Sketch，估算字符串key在最近一个窗口内的出现次数，线程安全。
+ * 窗口被切分为若干个子窗口，每个子窗口一张 depth * width 的计数表，按时间轮转复用；
+ * 估计值只会偏大不会偏小，误差上限约为 e / width * 窗口内总次数
+ */
+public class SlidingCountMinSketch {
+
+    /**
+     * 哈希函数个数（行数）
+     */
+    private final int depth;
+
+    /**
+     * 每行计数器个数
+     */
+    private final int width;
+
+    /**
+     * 子窗口时长（毫秒）
+     */
+    private final long bucketMillis;
+
+    /**
+     * 每个子窗口的计数表，按行连续存放
+     */
+    private final AtomicLongArray[] buckets;
+
+    /**
+     * 每个子窗口当前对应的时间片序号，与当前时间片不一致说明是上一轮的旧数据
+     */
+    private final AtomicLongArray epochs;
+
+    /**
+     * @param depth 哈希函数个数
+     * @param width 每行计数器个数
+     * @param windowMillis 窗口时长
+     * @param bucketCount 子窗口个数
+     */
+    public SlidingCountMinSketch(int depth, int width, long windowMillis, int bucketCount) {
+        this.depth = depth;
+        this.width = width;
+        this.bucketMillis = Math.max(1, windowMillis / bucketCount);
+        this.buckets = new AtomicLongArray[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            buckets[i] = new AtomicLongArray(depth * width);
+        }
+        this.epochs = new AtomicLongArray(bucketCount);
+    }
+
+    /**
+     * 计数加一，并返回窗口内的估计次数
+     * @param key 统计的key
+     * @return 最近一个窗口内的估计次数（含本次）
+     */
+    public long incrementAndEstimate(String key) {
+        long epoch = System.currentTimeMillis() / bucketMillis;
+        AtomicLongArray current = rotate(epoch);
+        long hash = mix(key.hashCode());
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int index = row * width + position(h1 + row * h2);
+            current.incrementAndGet(index);
+            long sum = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                // 跳过已滑出窗口、尚未被复用的子窗口
+                if (epoch - epochs.get(i) < buckets.length) {
+                    sum += buckets[i].get(index);
+                }
+            }
+            estimate = Math.min(estimate, sum);
+        }
+        return estimate;
+    }
+
+    /**
+     * 取当前时间片对应的子窗口，属于上一轮时先清零。
+     * 清零期间并发写入的少量计数可能丢失，对热点判断没有影响
+     */
+    private AtomicLongArray rotate(long epoch) {
+        int i = (int) (epoch % buckets.length);
+        long old = epochs.get(i);
+        if (old != epoch && epochs.compareAndSet(i, old, epoch)) {
+            AtomicLongArray bucket = buckets[i];
+            for (int j = 0; j < bucket.length(); j++) {
+                bucket.set(j, 0);
+            }
+        }
+        return buckets[i];
+    }
+
+    private int position(int combinedHash) {
+        // 取反保证非负
+        return (combinedHash < 0 ? ~combinedHash : combinedHash) % width;
+    }
+
+    /**
+     * 64位混淆函数（MurmurHash3 fmix64）
+     */
+    private static long mix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
@@ -0,0 +1,44 @@
+package com.hmdp.utils;
+
+/**
+ * 本地令牌桶，按时间差补充令牌，不依赖定时线程
+ */
+public class TokenBucket {
+
+    /**
+     * 每纳秒生成的令牌数
+     */
+    private final double tokensPerNano;
+
+    private final double capacity;
+
+    private double tokens;
+
+    private long lastNanos;
+
+    /**
+     * @param ratePerSecond 每秒生成的令牌数
+     * @param capacity 桶容量，即允许的突发请求数
+     */
+    public TokenBucket(double ratePerSecond, double capacity) {
+        this.tokensPerNano = ratePerSecond / 1_000_000_000d;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastNanos = System.nanoTime();
+    }
+
+    /**
+     * 尝试取一个令牌
+     * @return 是否取到
+     */
+    public synchronized boolean tryAcquire() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastNanos) * tokensPerNano);
+        lastNanos = now;
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+}
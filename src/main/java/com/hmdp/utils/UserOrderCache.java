@@ -0,0 +1,195 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.VoucherOrderDTO;
+import com.hmdp.entity.VoucherOrder;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.ORDER_USER_KEY;
+import static com.hmdp.utils.RedisConstants.ORDER_USER_TTL;
+
+/**
+ * 用户的订单缓存，查询订单状态、我的订单时不查 tb_voucher_order，只有首次查询我的订单时按 idx_user_id 回源一次。
+ * Redis中为hash结构 order:user:{userId}，字段为订单id，值为订单摘要的JSON；
+ * 秒杀成功时写入 pending，订单保存后改为 persisted，进入异常队列或死信Stream时改为 failed，persisted 不会再改为 failed。
+ * 字段 loaded 表示该用户的历史订单已从数据库加载过，没有该字段时列表需要回源一次
+ */
+@Component
+public class UserOrderCache {
+
+    private static final DefaultRedisScript<Long> FAILED_SCRIPT;
+    static {
+        FAILED_SCRIPT = new DefaultRedisScript<>();
+        FAILED_SCRIPT.setResultType(Long.class);
+        FAILED_SCRIPT.setLocation(new ClassPathResource("order_failed.lua"));
+    }
+
+    private static final String LOADED_FIELD = "loaded";
+
+    private static final long TTL_SECONDS = TimeUnit.DAYS.toSeconds(ORDER_USER_TTL);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public UserOrderCache(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * 秒杀成功，订单等待异步保存。
+     * 只在字段不存在时写入：Stream下单时消费者可能先于本方法把订单标记为已保存
+     * @param voucherOrder 订单，需要 id、userId、voucherId
+     */
+    public void pending(VoucherOrder voucherOrder) {
+        byte[] key = key(voucherOrder.getUserId());
+        byte[] field = bytes(voucherOrder.getId().toString());
+        byte[] value = bytes(JSONUtil.toJsonStr(toDTO(voucherOrder, VoucherOrderDTO.PENDING)));
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.hashCommands().hSetNX(key, field, value);
+            connection.keyCommands().expire(key, TTL_SECONDS);
+            return null;
+        });
+    }
+
+    /**
+     * 订单已保存到数据库，一批订单一次管道写入
+     * @param voucherOrders 已保存的订单
+     */
+    public void persisted(Collection<VoucherOrder> voucherOrders) {
+        put(voucherOrders, VoucherOrderDTO.PERSISTED);
+    }
+
+    /**
+     * 订单保存失败，已标记为 persisted 的订单保持不变：
+     * 重复投递的消息在库存扣完后会扣减失败进入异常队列，但订单已由之前的投递保存
+     * @param voucherOrder 订单
+     */
+    public void failed(VoucherOrder voucherOrder) {
+        stringRedisTemplate.execute(FAILED_SCRIPT,
+                Collections.singletonList(ORDER_USER_KEY + voucherOrder.getUserId()),
+                voucherOrder.getId().toString(),
+                JSONUtil.toJsonStr(toDTO(voucherOrder, VoucherOrderDTO.FAILED)),
+                String.valueOf(TTL_SECONDS));
+    }
+
+    /**
+     * 从数据库加载用户的全部订单并标记为已加载，已有的 pending 会被数据库中的记录覆盖
+     * @param userId 用户id
+     * @param voucherOrders 数据库中该用户的订单
+     */
+    public void load(Long userId, List<VoucherOrder> voucherOrders) {
+        byte[] key = key(userId);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (VoucherOrder order : voucherOrders) {
+                connection.hashCommands().hSet(key, bytes(order.getId().toString()),
+                        bytes(JSONUtil.toJsonStr(toDTO(order, VoucherOrderDTO.PERSISTED))));
+            }
+            connection.hashCommands().hSet(key, bytes(LOADED_FIELD), bytes("1"));
+            connection.keyCommands().expire(key, TTL_SECONDS);
+            return null;
+        });
+    }
+
+    /**
+     * 查询单个订单
+     * @param userId 用户id
+     * @param orderId 订单id
+     * @return 订单摘要，缓存中没有返回null
+     */
+    public VoucherOrderDTO get(Long userId, Long orderId) {
+        Object json = stringRedisTemplate.opsForHash().get(ORDER_USER_KEY + userId, orderId.toString());
+        return json == null ? null : JSONUtil.toBean(json.toString(), VoucherOrderDTO.class);
+    }
+
+    /**
+     * 查询用户某个优惠券的订单
+     * @param userId 用户id
+     * @param voucherId 优惠券id
+     * @return 订单id最大的一个，缓存中没有返回null
+     */
+    public VoucherOrderDTO find(Long userId, Long voucherId) {
+        List<Object> values = stringRedisTemplate.opsForHash().values(ORDER_USER_KEY + userId);
+        VoucherOrderDTO found = null;
+        for (Object json : values) {
+            if ("1".equals(json)) {
+                // loaded 标记
+                continue;
+            }
+            VoucherOrderDTO order = JSONUtil.toBean(json.toString(), VoucherOrderDTO.class);
+            if (voucherId.equals(order.getVoucherId()) && (found == null || order.getId() > found.getId())) {
+                found = order;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 查询用户的全部订单，按订单id倒序（即下单时间倒序）
+     * @param userId 用户id
+     * @return 订单列表，未从数据库加载过返回null
+     */
+    public List<VoucherOrderDTO> list(Long userId) {
+        Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(ORDER_USER_KEY + userId);
+        if (!entries.containsKey(LOADED_FIELD)) {
+            return null;
+        }
+        List<VoucherOrderDTO> orders = new ArrayList<>(entries.size() - 1);
+        entries.forEach((field, json) -> {
+            if (!LOADED_FIELD.equals(field)) {
+                orders.add(JSONUtil.toBean(json.toString(), VoucherOrderDTO.class));
+            }
+        });
+        orders.sort(Comparator.comparing(VoucherOrderDTO::getId).reversed());
+        return orders;
+    }
+
+    private void put(Collection<VoucherOrder> voucherOrders, String state) {
+        if (voucherOrders.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (VoucherOrder order : voucherOrders) {
+                byte[] key = key(order.getUserId());
+                connection.hashCommands().hSet(key, bytes(order.getId().toString()),
+                        bytes(JSONUtil.toJsonStr(toDTO(order, state))));
+                connection.keyCommands().expire(key, TTL_SECONDS);
+            }
+            return null;
+        });
+    }
+
+    private static VoucherOrderDTO toDTO(VoucherOrder order, String state) {
+        Integer status = order.getStatus();
+        if (status == null && VoucherOrderDTO.PERSISTED.equals(state)) {
+            // 数据库默认值：未支付
+            status = 1;
+        }
+        return new VoucherOrderDTO()
+                .setId(order.getId())
+                .setVoucherId(order.getVoucherId())
+                .setState(state)
+                .setStatus(status)
+                // 异步保存的订单没有下单时间，取订单id中的时间戳
+                .setCreateTime(order.getCreateTime() == null ? RedisIdWorker.time(order.getId()) : order.getCreateTime());
+    }
+
+    private static byte[] key(Long userId) {
+        return bytes(ORDER_USER_KEY + userId);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,11 @@
+-- 数据库提交后删除刷新中记录，只删除点赞数与写入数据库的值相同的记录；
+-- 不同说明其他节点已经取走了更新的点赞数，留给对方处理
+-- KEYS[1] 刷新中hash，ARGV 博客id, 点赞数, 博客id, 点赞数...
+local removed = 0
+for i = 1, #ARGV, 2 do
+    if (redis.call("hget", KEYS[1], ARGV[i]) == ARGV[i + 1]) then
+        redis.call("hdel", KEYS[1], ARGV[i])
+        removed = removed + 1
+    end
+end
+return removed
@@ -0,0 +1,15 @@
+-- 取出一批待刷新的博客，连同当前点赞数记入刷新中hash，数据库提交后再删除，进程宕机时由恢复任务重新刷新
+-- KEYS[1] 待刷新的博客id集合，KEYS[2] 刷新中hash（博客id -> 点赞数）
+-- ARGV[1] 批大小，ARGV[2] 点赞数key前缀
+-- 返回 博客id, 点赞数, 博客id, 点赞数...
+local ids = redis.call("spop", KEYS[1], tonumber(ARGV[1]))
+local result = {}
+for i = 1, #ids do
+    local count = redis.call("get", ARGV[2] .. ids[i])
+    if (count) then
+        redis.call("hset", KEYS[2], ids[i], count)
+        result[#result + 1] = ids[i]
+        result[#result + 1] = count
+    end
+end
+return result
@@ -0,0 +1,32 @@
+-- 点赞｜取消点赞，点赞用户集合、点赞数、待刷新集合在一次调用内修改
+-- KEYS[1] 点赞用户zset，KEYS[2] 点赞数，KEYS[3] 待刷新到数据库的博客id集合
+-- ARGV[1] 用户id，ARGV[2] 当前时间（毫秒），ARGV[3] 博客id
+-- 返回 {是否点赞, 点赞数}；点赞数未加载时返回空列表，由调用方从数据库加载后重试
+local likedKey = KEYS[1]
+local countKey = KEYS[2]
+local dirtyKey = KEYS[3]
+local userId = ARGV[1]
+
+if (redis.call("exists", countKey) == 0) then
+    return {}
+end
+local liked
+local count
+if (redis.call("zscore", likedKey, userId)) then
+    redis.call("zrem", likedKey, userId)
+    -- 点赞数不小于0：tb_blog.liked 为 UNSIGNED，负数会使整批写回失败
+    count = tonumber(redis.call("get", countKey))
+    if (count > 0) then
+        count = redis.call("decr", countKey)
+    else
+        count = 0
+        redis.call("set", countKey, count)
+    end
+    liked = 0
+else
+    redis.call("zadd", likedKey, ARGV[2], userId)
+    count = redis.call("incr", countKey)
+    liked = 1
+end
+redis.call("sadd", dirtyKey, ARGV[3])
+return { liked, count }
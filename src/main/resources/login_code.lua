@@ -0,0 +1,68 @@
+-- 发送验证码、校验验证码，一次调用内完成手机号、IP的滑动窗口限流和验证码错误次数判断
+-- KEYS[1] 验证码key，KEYS[2] 验证码错误次数key，KEYS[3...] 各限流窗口的key
+-- ARGV[1] 操作：send 发送；verify 校验
+-- ARGV[2] 当前时间（毫秒）
+-- ARGV[3] send 时为新验证码，verify 时为用户提交的验证码
+-- ARGV[4] 验证码有效期（秒）
+-- ARGV[5] 验证码最多错误次数
+-- ARGV[6...] 与 KEYS[3...] 一一对应的 窗口长度（毫秒）, 窗口内上限
+-- 返回值：大于0 被第n个限流窗口拒绝；0 成功；-1 验证码错误；-2 验证码不存在或已过期；-3 错误次数过多，验证码已作废
+local codeKey = KEYS[1]
+local failKey = KEYS[2]
+local action = ARGV[1]
+local now = tonumber(ARGV[2])
+local code = ARGV[3]
+local codeTtl = tonumber(ARGV[4])
+local maxAttempts = tonumber(ARGV[5])
+
+-- 滑动窗口计数：每个key一个hash，字段为窗口序号，值为该窗口内的次数，
+-- 估算值 = 当前窗口次数 + 上一窗口次数 * 上一窗口仍在滑动窗口内的比例，每个key最多两个字段
+local limits = #KEYS - 2
+local windows = {}
+for i = 1, limits do
+    local key = KEYS[i + 2]
+    local window = tonumber(ARGV[4 + i * 2])
+    local max = tonumber(ARGV[5 + i * 2])
+    local current = math.floor(now / window)
+    local counts = redis.call("hmget", key, current, current - 1)
+    local estimate = (tonumber(counts[1]) or 0)
+            + (tonumber(counts[2]) or 0) * (1 - (now % window) / window)
+    if (estimate >= max) then
+        -- 被拒绝的请求不计数
+        return i
+    end
+    windows[i] = { key, window, current }
+end
+-- 全部通过后再计数
+for i = 1, limits do
+    local key, window, current = windows[i][1], windows[i][2], windows[i][3]
+    redis.call("hincrby", key, current, 1)
+    redis.call("hdel", key, current - 2)
+    redis.call("pexpire", key, window * 2)
+end
+
+if (action == "send") then
+    -- 新验证码重新计算错误次数
+    redis.call("set", codeKey, code, "ex", codeTtl)
+    redis.call("del", failKey)
+    return 0
+end
+
+local cacheCode = redis.call("get", codeKey)
+if (not cacheCode) then
+    return -2
+end
+if (cacheCode == code) then
+    -- 验证码只能使用一次
+    redis.call("del", codeKey, failKey)
+    return 0
+end
+local fails = redis.call("incr", failKey)
+if (fails == 1) then
+    redis.call("expire", failKey, codeTtl)
+end
+if (fails >= maxAttempts) then
+    redis.call("del", codeKey, failKey)
+    return -3
+end
+return -1
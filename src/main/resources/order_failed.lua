@@ -0,0 +1,11 @@
+-- 把用户订单缓存中的订单标记为失败，已保存（persisted）的订单不降级：
+-- 重复投递的消息扣库存失败进入异常队列时，订单其实已经保存过
+-- KEYS[1] 用户订单缓存key，ARGV[1] 订单id，ARGV[2] failed 订单摘要JSON，ARGV[3] 过期时间（秒）
+-- 返回值：1 已标记；0 订单已保存，未修改
+local json = redis.call("hget", KEYS[1], ARGV[1])
+if (json and cjson.decode(json)["state"] == "persisted") then
+    return 0
+end
+redis.call("hset", KEYS[1], ARGV[1], ARGV[2])
+redis.call("expire", KEYS[1], ARGV[3])
+return 1
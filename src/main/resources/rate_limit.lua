@@ -0,0 +1,28 @@
+-- 秒杀券的全局令牌桶，节点一次申请多个令牌在本地分配
+-- 令牌桶key，hash结构，字段 tokens 剩余令牌数，ts 上次补充时间
+local key = KEYS[1]
+-- 每秒生成的令牌数
+local rate = tonumber(ARGV[1])
+-- 桶容量
+local capacity = tonumber(ARGV[2])
+-- 当前时间（毫秒）
+local now = tonumber(ARGV[3])
+-- 申请的令牌数
+local requested = tonumber(ARGV[4])
+
+local bucket = redis.call("hmget", key, "tokens", "ts")
+local tokens = tonumber(bucket[1]) or capacity
+local ts = tonumber(bucket[2]) or now
+
+-- 各节点时钟可能不一致，时间只前进不后退
+if (now > ts) then
+    tokens = math.min(capacity, tokens + (now - ts) * rate / 1000)
+    ts = now
+end
+
+local granted = math.min(math.floor(tokens), requested)
+tokens = tokens - granted
+redis.call("hset", key, "tokens", tokens, "ts", ts)
+-- 桶补满所需时间之后没有请求则自动删除
+redis.call("pexpire", key, math.ceil(capacity * 1000 / rate) + 1000)
+return granted
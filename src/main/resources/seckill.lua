@@ -6,14 +6,37 @@
 local userId = ARGV[1]
 -- 秒杀券id
 local voucherId = ARGV[2]
--- 订单id
---local orderId = ARGV[3]
+-- 当前时间（毫秒）
+local now = tonumber(ARGV[3])
+-- 订单Stream key，为空时只扣库存，由调用方发送到RabbitMQ
+local streamKey = ARGV[4]
+-- 订单序列号key、时间戳，用于生成订单id
+local sequenceKey = ARGV[5]
+local timestamp = ARGV[6]
+-- Stream的长度上限，MAXLEN ~ 近似裁剪
+local maxLen = ARGV[7]
 
+-- 秒杀券时间窗口key
+local voucherKey = "seckill:voucher:" .. voucherId
 -- 用户集合key
 local usersKey = "seckill:order:" .. voucherId
 -- 库存key
 local stockKey = "seckill:stock:" .. voucherId
 
+local window = redis.call("hmget", voucherKey, "begin", "end")
+if (not window[1] or not window[2]) then
+    -- 秒杀券不存在
+    return 3
+end
+if (now < tonumber(window[1])) then
+    -- 秒杀尚未开始
+    return 4
+end
+if (now > tonumber(window[2])) then
+    -- 秒杀已经结束
+    return 5
+end
+
 if (tonumber(redis.call("get", stockKey)) < 1) then
     -- 库存不足
     return 1
@@ -28,7 +51,14 @@ end
 redis.call("incrby", stockKey, -1)
 -- 保存用户
 redis.call("sadd", usersKey, userId)
--- 将订单信息发送进消息队列，xadd stream.orders * k1 v1 k2 v2 ...
---redis.call('xadd', 'stream.orders', '*', 'userId', userId, 'voucherId', voucherId, 'id', orderId)
+if (streamKey) then
+    -- 生成订单序列号，订单id由调用方用时间戳和序列号拼接（Lua数字无法精确表示64位id）
+    local sequence = redis.call("incr", sequenceKey)
+    -- 将订单信息发送进消息队列，xadd stream.orders maxlen ~ n * k1 v1 k2 v2 ...
+    redis.call("xadd", streamKey, "maxlen", "~", maxLen, "*", "userId", userId, "voucherId", voucherId,
+            "timestamp", timestamp, "sequence", sequence)
+    -- 返回序列号的相反数，与错误码区分
+    return -sequence
+end
 
 return 0
\ No newline at end of file
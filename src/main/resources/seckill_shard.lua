@@ -0,0 +1,38 @@
+-- 分片库存的秒杀脚本，在用户所属的分片上执行
+-- 库存分片key
+local stockKey = KEYS[1]
+-- 分片的用户集合key
+local usersKey = KEYS[2]
+-- 用户id
+local userId = ARGV[1]
+-- 秒杀开始、结束时间（毫秒）
+local beginTime = tonumber(ARGV[2])
+local endTime = tonumber(ARGV[3])
+-- 当前时间（毫秒）
+local now = tonumber(ARGV[4])
+
+if (now < beginTime) then
+    -- 秒杀尚未开始
+    return 4
+end
+if (now > endTime) then
+    -- 秒杀已经结束
+    return 5
+end
+
+if (redis.call("sismember", usersKey, userId) == 1) then
+    -- 用户下过单
+    return 2
+end
+
+-- 保存用户，本分片没有库存时也先占位，防止同一用户在其他分片重复下单
+redis.call("sadd", usersKey, userId)
+
+if ((tonumber(redis.call("get", stockKey)) or 0) < 1) then
+    -- 本分片库存不足，由调用方到其他分片扣减
+    return 1
+end
+
+-- 扣库存
+redis.call("incrby", stockKey, -1)
+return 0
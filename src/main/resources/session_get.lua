@@ -0,0 +1,19 @@
+-- 查询登录用户信息，剩余有效期低于阈值时续期
+-- 登录token的key
+local key = KEYS[1]
+-- 有效期（秒）
+local ttl = tonumber(ARGV[1])
+-- 续期阈值（秒）
+local threshold = tonumber(ARGV[2])
+
+local user = redis.call("hgetall", key)
+if (#user == 0) then
+    -- token无效
+    return user
+end
+
+local remaining = redis.call("ttl", key)
+if (remaining >= 0 and remaining < threshold) then
+    redis.call("expire", key, ttl)
+end
+return user
@@ -0,0 +1,14 @@
+-- 撤销用户的秒杀资格并归还一个库存，用户不在集合中时不归还，重复执行不会多归还
+-- 库存key（分片时为用户所属分片）
+local stockKey = KEYS[1]
+-- 用户集合key
+local usersKey = KEYS[2]
+-- 用户id
+local userId = ARGV[1]
+
+if (redis.call("srem", usersKey, userId) == 0) then
+    return 0
+end
+
+redis.call("incrby", stockKey, 1)
+return 1
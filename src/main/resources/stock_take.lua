@@ -0,0 +1,10 @@
+-- 从指定库存分片扣减一个库存
+local stockKey = KEYS[1]
+
+if ((tonumber(redis.call("get", stockKey)) or 0) < 1) then
+    -- 库存不足
+    return 1
+end
+
+redis.call("incrby", stockKey, -1)
+return 0
@@ -0,0 +1,3 @@
+-- 写入Stream并按 MAXLEN ~ 近似裁剪，Spring Data Redis 的 XADD 不支持 MAXLEN 参数
+-- KEYS[1] Stream key，ARGV[1] 长度上限，ARGV[2...] 字段, 值, 字段, 值...
+return redis.call("xadd", KEYS[1], "maxlen", "~", ARGV[1], "*", unpack(ARGV, 2))
@@ -3,17 +3,42 @@ package com.hmdp;
 import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.bean.copier.CopyOptions;
 import cn.hutool.core.lang.UUID;
+import com.hmdp.config.CacheProperties;
+import com.hmdp.config.IdWorkerProperties;
+import com.hmdp.config.LoginProperties;
 import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.entity.Shop;
 import com.hmdp.entity.User;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IBlogService;
+import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IUserService;
+import com.hmdp.service.IVoucherOrderService;
 import com.hmdp.service.impl.ShopServiceImpl;
+import com.hmdp.utils.BeanMappers;
+import com.hmdp.utils.BlogLikeCounter;
+import com.hmdp.utils.BinaryCacheCodec;
 import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheCodec;
+import com.hmdp.utils.JsonCacheCodec;
+import com.hmdp.utils.LogicalValue;
+import com.hmdp.utils.LoginCodeLimiter;
+import com.hmdp.utils.MqConstants;
+import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SeckillStock;
+import com.hmdp.utils.SeckillVoucherCache;
+import com.hmdp.utils.SignedSessionToken;
 import org.junit.jupiter.api.Test;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Range;
 import org.springframework.data.geo.Point;
 import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 
 import javax.annotation.Resource;
@@ -21,14 +46,27 @@ import javax.annotation.Resource;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
+import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest
 class HmDianPingApplicationTests {
@@ -45,13 +83,562 @@ class HmDianPingApplicationTests {
     @Resource
     private RabbitTemplate rabbitTemplate;
 
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+
+    @Resource
+    private RedisIdWorker redisIdWorker;
+
+    @Resource
+    private SeckillStock seckillStock;
+
+    @Resource
+    private SeckillVoucherCache seckillVoucherCache;
+
+    @Resource
+    private IdWorkerProperties idWorkerProperties;
+
+    @Resource
+    private SignedSessionToken signedSessionToken;
+
+    @Resource
+    private LoginCodeLimiter loginCodeLimiter;
+
+    @Resource
+    private LoginProperties loginProperties;
+
+    @Resource
+    private CacheProperties cacheProperties;
+
+    @Resource
+    private BlogLikeCounter blogLikeCounter;
+
+    @Resource
+    private IBlogService blogService;
+
     @Test
     void testSetWithLogicalExpire() {
         Shop shop = shopService.getById(1L);
-        CacheClient cacheClient = new CacheClient(stringRedisTemplate);
         cacheClient.setWithLogicalExpire(CACHE_SHOP_KEY + 1, shop, 1L, TimeUnit.SECONDS);
     }
 
+    /**
+     * 压测热点商铺在逻辑过期、概率提前刷新两种模式下每秒的加锁（SETNX）次数
+     */
+    @Test
+    void testEarlyRefreshLockAttempts() throws InterruptedException {
+        lockAttemptsLoadTest("shopLogical", () -> cacheClient.queryWithLogicalExpire(
+                "shopLogical", 1L, Shop.class, shopService::getById, 2L, TimeUnit.SECONDS));
+        lockAttemptsLoadTest("shopXFetch", () -> cacheClient.queryWithEarlyRefresh(
+                "shopXFetch", 1L, Shop.class, shopService::getById, 2L, TimeUnit.SECONDS));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void lockAttemptsLoadTest(String keyPrefix, Runnable query) throws InterruptedException {
+        // 预热缓存，逻辑过期时间2秒，压测10秒内会多次过期
+        cacheClient.setWithLogicalExpire(CACHE_KEY + keyPrefix + ":1", shopService.getById(1L), 2L, TimeUnit.SECONDS);
+        int seconds = 10;
+        long end = System.currentTimeMillis() + seconds * 1000L;
+        ExecutorService pool = Executors.newFixedThreadPool(50);
+        for (int i = 0; i < 50; i++) {
+            pool.submit(() -> {
+                while (System.currentTimeMillis() < end) {
+                    query.run();
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(seconds * 3L, TimeUnit.SECONDS);
+        Map<String, Object> stats = (Map<String, Object>) cacheClient.stats().get(keyPrefix);
+        System.out.println(keyPrefix + " 加锁次数/秒：" + (Long) stats.get("lockAttempts") / (double) seconds
+                + "，重建次数：" + stats.get("dbLoads"));
+    }
+
+    /**
+     * 对比JSON与二进制编码：单条逻辑过期缓存的字节数，以及编码、解码的平均耗时
+     */
+    @Test
+    void testCacheCodec() {
+        Shop shop = shopService.getById(1L);
+        for (CacheCodec codec : new CacheCodec[]{new JsonCacheCodec(), new BinaryCacheCodec()}) {
+            long expireMillis = System.currentTimeMillis() + 60000;
+            byte[] bytes = codec.encodeLogical(shop, expireMillis, 10L);
+            // 预热
+            for (int i = 0; i < 100000; i++) {
+                codec.decodeLogical(codec.encodeLogical(shop, expireMillis, 10L), Shop.class);
+            }
+            int n = 1000000;
+            long begin = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                codec.encodeLogical(shop, expireMillis, 10L);
+            }
+            long encodeNanos = (System.nanoTime() - begin) / n;
+            begin = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                codec.decodeLogical(bytes, Shop.class);
+            }
+            long decodeNanos = (System.nanoTime() - begin) / n;
+            System.out.println(codec.name() + "：" + bytes.length + " 字节，编码 " + encodeNanos
+                    + " ns/op，解码 " + decodeNanos + " ns/op");
+            // 编码后解码得到相同的数据，包括大部分字段为null的商铺和null本身（重建时数据已删除）
+            LogicalValue<Shop> decoded = codec.decodeLogical(bytes, Shop.class);
+            assertEquals(shop, decoded.getValue(), codec.name());
+            assertEquals(expireMillis, decoded.getExpireMillis(), codec.name());
+            assertEquals(10L, decoded.getDelta(), codec.name());
+            Shop sparse = new Shop().setId(2L).setName("sparse");
+            assertEquals(sparse, codec.decodeLogical(codec.encodeLogical(sparse, expireMillis, null), Shop.class)
+                    .getValue(), codec.name());
+            assertNull(codec.decodeLogical(codec.encodeLogical(null, expireMillis, null), Shop.class).getValue(),
+                    codec.name());
+        }
+        BinaryCacheCodec binary = new BinaryCacheCodec();
+        assertNull(binary.decode(binary.encode(null), Shop.class));
+    }
+
+    /**
+     * 并发读写同一商铺，测量读到旧数据的最长时间（从新版本提交到仍读到旧版本的间隔）。
+     * 以 sold 字段作为版本号（依次写入 VERSION_BASE + 1、+ 2、...，与原数据区分，sold 为无符号列不能写负数），
+     * 写线程每20ms更新一次，读线程持续走缓存查询，结束后恢复原数据
+     */
+    @Test
+    void testStaleReadWindow() throws InterruptedException {
+        Shop origin = shopService.getById(1L);
+        int versionBase = 1000000000;
+        int versions = 200;
+        // sold -> 提交时间
+        Map<Integer, Long> commitTimes = new ConcurrentHashMap<>();
+        AtomicLong maxStaleMillis = new AtomicLong();
+        AtomicLong staleReads = new AtomicLong();
+        AtomicLong totalReads = new AtomicLong();
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService pool = Executors.newFixedThreadPool(20);
+        try {
+            for (int i = 0; i < 20; i++) {
+                pool.submit(() -> {
+                    while (running.get()) {
+                        int sold = shopService.queryById(1L).getSold();
+                        long now = System.currentTimeMillis();
+                        totalReads.incrementAndGet();
+                        // 读到的版本之后已提交的第一个新版本，距今即为这次读取的陈旧时长
+                        Long newerCommit = commitTimes.get(sold > versionBase ? sold + 1 : versionBase + 1);
+                        if (newerCommit != null && now > newerCommit) {
+                            staleReads.incrementAndGet();
+                            maxStaleMillis.accumulateAndGet(now - newerCommit, Math::max);
+                        }
+                    }
+                });
+            }
+            for (int version = 1; version <= versions; version++) {
+                Shop shop = new Shop();
+                shop.setId(1L);
+                shop.setSold(versionBase + version);
+                shopService.update(shop);
+                commitTimes.put(versionBase + version, System.currentTimeMillis());
+                Thread.sleep(20);
+            }
+        } finally {
+            running.set(false);
+            pool.shutdown();
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+            // 恢复原数据
+            Shop restore = new Shop();
+            restore.setId(1L);
+            restore.setSold(origin.getSold());
+            shopService.update(restore);
+        }
+        System.out.println("读取次数：" + totalReads.get() + "，读到旧数据次数：" + staleReads.get()
+                + "，最长陈旧时间：" + maxStaleMillis.get() + " ms");
+        // 延迟双删之后不应再读到旧数据，余量覆盖失效广播和一次读库回写的耗时
+        long bound = cacheProperties.getInvalidation().getDoubleDeleteDelay().toMillis() + 500;
+        assertTrue(maxStaleMillis.get() < bound, "最长陈旧时间 " + maxStaleMillis.get() + " ms 超过 " + bound + " ms");
+    }
+
+    /**
+     * 订单持久化吞吐：每批1、50、500条时每秒保存的订单数（与批量消费模式下每次消费的工作量一致）
+     */
+    @Test
+    void testOrderBatchThroughput() {
+        SeckillVoucher voucher = seckillVoucherService.list().get(0);
+        int n = 5000;
+        for (int batchSize : new int[]{1, 50, 500}) {
+            seckillVoucherService.lambdaUpdate()
+                    .set(SeckillVoucher::getStock, n)
+                    .eq(SeckillVoucher::getVoucherId, voucher.getVoucherId())
+                    .update();
+            List<Long> orderIds = new ArrayList<>(n);
+            long begin = System.currentTimeMillis();
+            for (int i = 0; i < n; i += batchSize) {
+                List<VoucherOrder> orders = new ArrayList<>(batchSize);
+                for (int j = i; j < i + batchSize && j < n; j++) {
+                    long orderId = redisIdWorker.nextId("order");
+                    orderIds.add(orderId);
+                    orders.add(new VoucherOrder()
+                            .setId(orderId)
+                            .setUserId((long) j + 1)
+                            .setVoucherId(voucher.getVoucherId()));
+                }
+                voucherOrderService.createOrders(orders);
+            }
+            long cost = System.currentTimeMillis() - begin;
+            System.out.println("批大小 " + batchSize + "：" + n * 1000L / Math.max(1, cost) + " 单/秒");
+            voucherOrderService.removeByIds(orderIds);
+        }
+        // 恢复库存
+        seckillVoucherService.lambdaUpdate()
+                .set(SeckillVoucher::getStock, voucher.getStock())
+                .eq(SeckillVoucher::getVoucherId, voucher.getVoucherId())
+                .update();
+    }
+
+    /**
+     * 库存不分片（K=1）与分片（K=8）对比：1秒内发出5万个不同用户的秒杀请求，统计吞吐、P99耗时，并校验没有超卖
+     */
+    @Test
+    void testSeckillStockShards() throws InterruptedException {
+        for (int shards : new int[]{1, 8}) {
+            long voucherId = 900000000L + shards;
+            int stock = 10000;
+            int requests = 50000;
+            SeckillVoucher voucher = new SeckillVoucher()
+                    .setVoucherId(voucherId)
+                    .setBeginTime(LocalDateTime.now().minusHours(1))
+                    .setEndTime(LocalDateTime.now().plusHours(1))
+                    .setStockShards(shards);
+            seckillVoucherCache.put(voucher);
+            seckillStock.init(voucherId, stock, shards);
+            ExecutorService pool = Executors.newFixedThreadPool(200);
+            AtomicLong success = new AtomicLong();
+            long[] costs = new long[requests];
+            long begin = System.currentTimeMillis();
+            for (int i = 0; i < requests; i++) {
+                // 每毫秒发出50个请求，即5万RPS
+                if (i % 50 == 0) {
+                    long wait = begin + i / 50 - System.currentTimeMillis();
+                    if (wait > 0) {
+                        Thread.sleep(wait);
+                    }
+                }
+                int index = i;
+                pool.submit(() -> {
+                    long start = System.nanoTime();
+                    if (seckillStock.deduct(voucher, (long) index + 1) == 0) {
+                        success.incrementAndGet();
+                    }
+                    costs[index] = System.nanoTime() - start;
+                });
+            }
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+            long cost = System.currentTimeMillis() - begin;
+            Arrays.sort(costs);
+            System.out.println("K=" + shards + "：成功 " + success.get() + "/" + stock + "，吞吐 "
+                    + requests * 1000L / cost + " 次/秒，P99 " + costs[requests * 99 / 100] / 1000 + " us");
+            // 没有超卖
+            assertTrue(success.get() <= stock, "超卖：K=" + shards + "，成功 " + success.get());
+            // 清理测试数据
+            Set<String> keys = stringRedisTemplate.keys("seckill:*" + voucherId + "*");
+            if (keys != null) {
+                stringRedisTemplate.delete(keys);
+            }
+        }
+    }
+
+    /**
+     * 下单链路对比：RabbitMQ（脚本 + 生成id + 发送消息）与 Redis Stream（一次脚本调用）每秒可处理的秒杀请求数
+     * RabbitMQ链路发送到没有绑定队列的路由key，只计发送耗时，不产生订单
+     */
+    @Test
+    void testOrderPipelines() throws InterruptedException {
+        int requests = 20000;
+        String streamKey = "stream.orders";
+        for (String pipeline : new String[]{"rabbitmq", "stream"}) {
+            long voucherId = "rabbitmq".equals(pipeline) ? 900000101L : 900000102L;
+            SeckillVoucher voucher = new SeckillVoucher()
+                    .setVoucherId(voucherId)
+                    .setBeginTime(LocalDateTime.now().minusHours(1))
+                    .setEndTime(LocalDateTime.now().plusHours(1));
+            seckillVoucherCache.put(voucher);
+            seckillStock.init(voucherId, requests, 1);
+            ExecutorService pool = Executors.newFixedThreadPool(100);
+            AtomicLong success = new AtomicLong();
+            long begin = System.currentTimeMillis();
+            for (int i = 0; i < requests; i++) {
+                long userId = i + 1;
+                pool.submit(() -> {
+                    if ("stream".equals(pipeline)) {
+                        // 成功返回订单id，失败返回1~5的错误码
+                        if (seckillStock.deductAndEnqueue(voucher, userId) > 5) {
+                            success.incrementAndGet();
+                        }
+                        return;
+                    }
+                    if (seckillStock.deduct(voucher, userId) == 0) {
+                        success.incrementAndGet();
+                        VoucherOrder order = new VoucherOrder()
+                                .setId(redisIdWorker.nextId("order"))
+                                .setUserId(userId)
+                                .setVoucherId(voucherId);
+                        rabbitTemplate.convertAndSend(MqConstants.ORDER_TOPIC, "order.bench", order);
+                    }
+                });
+            }
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+            long cost = System.currentTimeMillis() - begin;
+            System.out.println(pipeline + "：" + requests * 1000L / cost + " 次/秒");
+            // 库存与请求数相同、用户各不相同，每个请求都应下单成功
+            assertEquals(requests, success.get(), pipeline);
+            // 清理测试数据
+            if ("stream".equals(pipeline)) {
+                List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                        .range(streamKey, Range.closed(begin + "-0", "+"));
+                if (records != null) {
+                    RecordId[] ids = records.stream()
+                            .filter(r -> String.valueOf(voucherId).equals(r.getValue().get("voucherId")))
+                            .map(MapRecord::getId)
+                            .toArray(RecordId[]::new);
+                    stringRedisTemplate.opsForStream().delete(streamKey, ids);
+                }
+            }
+            Set<String> keys = stringRedisTemplate.keys("seckill:*" + voucherId + "*");
+            if (keys != null) {
+                stringRedisTemplate.delete(keys);
+            }
+        }
+    }
+
+    /**
+     * 对比每个id一次INCR与号段模式的id生成吞吐，并校验号段模式生成的id不重复
+     */
+    @Test
+    void testIdWorkerModes() throws InterruptedException {
+        int threads = 50;
+        int idsPerThread = 10000;
+        String mode = idWorkerProperties.getMode();
+        try {
+            for (String m : new String[]{"incr", "segment"}) {
+                idWorkerProperties.setMode(m);
+                Set<Long> ids = ConcurrentHashMap.newKeySet();
+                ExecutorService pool = Executors.newFixedThreadPool(threads);
+                long begin = System.currentTimeMillis();
+                for (int i = 0; i < threads; i++) {
+                    pool.submit(() -> {
+                        for (int j = 0; j < idsPerThread; j++) {
+                            ids.add(redisIdWorker.nextId("bench"));
+                        }
+                    });
+                }
+                pool.shutdown();
+                pool.awaitTermination(5, TimeUnit.MINUTES);
+                long cost = System.currentTimeMillis() - begin;
+                System.out.println(m + "：" + threads * idsPerThread * 1000L / Math.max(cost, 1) + " 个/秒，不重复的id："
+                        + ids.size());
+                // 两种模式生成的id都不能重复
+                assertEquals(threads * idsPerThread, ids.size(), m);
+            }
+        } finally {
+            idWorkerProperties.setMode(mode);
+            stringRedisTemplate.delete(redisIdWorker.sequenceKey("bench"));
+        }
+    }
+
+    /**
+     * 签名token的校验吞吐，以及每百万会话在Redis hash会话模式下占用的内存（签名token模式不占用）
+     */
+    @Test
+    void testSignedSessionToken() throws InterruptedException {
+        UserDTO user = new UserDTO();
+        user.setId(1L);
+        user.setNickName("user_bench");
+        user.setIcon("/imgs/icons/bench.jpg");
+        String token = signedSessionToken.issue(user);
+        int threads = 8;
+        int verifies = 1000000;
+        AtomicLong failures = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long begin = System.currentTimeMillis();
+        for (int i = 0; i < threads; i++) {
+            pool.submit(() -> {
+                for (int j = 0; j < verifies; j++) {
+                    if (signedSessionToken.verify(token) == null) {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(5, TimeUnit.MINUTES);
+        long cost = System.currentTimeMillis() - begin;
+        System.out.println("签名token校验：" + threads * (long) verifies * 1000 / Math.max(cost, 1) + " 次/秒，失败："
+                + failures.get() + "，token长度：" + token.length());
+        assertEquals(0, failures.get());
+        // 只改签名最后一个字符未参与解码的低位，签名相同，退出登录后同样失效
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        char last = token.charAt(token.length() - 1);
+        String variant = token.substring(0, token.length() - 1) + alphabet.charAt(alphabet.indexOf(last) ^ 1);
+        assertNotEquals(token, variant);
+        assertNotNull(signedSessionToken.verify(variant));
+        signedSessionToken.revoke(variant);
+        assertNull(signedSessionToken.verify(token));
+        assertNull(signedSessionToken.verify(variant));
+        stringRedisTemplate.opsForZSet().remove(LOGIN_DENY_KEY, token.substring(token.indexOf('.') + 1));
+        // 按样本估算Redis hash会话的内存
+        int sessions = 1000;
+        long bytes = 0;
+        for (int i = 0; i < sessions; i++) {
+            String key = LOGIN_USER_KEY + UUID.fastUUID().toString(true);
+            Map<String, String> userMap = new HashMap<>();
+            userMap.put("id", String.valueOf(i + 1));
+            userMap.put("nickName", user.getNickName());
+            userMap.put("icon", user.getIcon());
+            stringRedisTemplate.opsForHash().putAll(key, userMap);
+            stringRedisTemplate.expire(key, LOGIN_USER_TTL, TimeUnit.DAYS);
+            Long usage = stringRedisTemplate.execute((RedisCallback<Long>) connection -> (Long) connection.execute(
+                    "MEMORY", "USAGE".getBytes(StandardCharsets.UTF_8), key.getBytes(StandardCharsets.UTF_8)));
+            bytes += usage == null ? 0 : usage;
+            stringRedisTemplate.delete(key);
+        }
+        System.out.println("Redis会话每百万占用：" + bytes * (1000000 / sessions) / 1024 / 1024
+                + " MB，签名token：0 MB（只保存退出登录且未过期的token id）");
+    }
+
+    /**
+     * 对比 BeanUtil 反射拷贝与手写转换的单次耗时和内存分配：User -> UserDTO -> Map -> UserDTO
+     */
+    @Test
+    void testBeanMappers() {
+        User user = new User().setId(1L).setPhone("13800000000").setNickName("user_bench").setIcon("/imgs/icons/bench.jpg");
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        UserDTO expected = new UserDTO();
+        expected.setId(user.getId());
+        expected.setNickName(user.getNickName());
+        expected.setIcon(user.getIcon());
+        int rounds = 1000000;
+        for (String mode : new String[]{"BeanUtil", "BeanMappers", "BeanUtil", "BeanMappers"}) {
+            // 前两轮为预热
+            long bytes = threadBean.getThreadAllocatedBytes(threadId);
+            long begin = System.nanoTime();
+            long sink = 0;
+            UserDTO userDTO = null;
+            for (int i = 0; i < rounds; i++) {
+                if ("BeanUtil".equals(mode)) {
+                    UserDTO copy = BeanUtil.copyProperties(user, UserDTO.class);
+                    Map<String, Object> map = BeanUtil.beanToMap(copy, new HashMap<>(),
+                            CopyOptions.create()
+                                    .setIgnoreNullValue(true)
+                                    .setFieldValueEditor((field, value) -> value.toString()));
+                    userDTO = BeanUtil.fillBeanWithMap(map, new UserDTO(), false);
+                } else {
+                    // 与会话读取一致：Lua脚本返回 HGETALL 的字段、值交替列表
+                    Map<String, String> map = BeanMappers.toMap(BeanMappers.toUserDTO(user));
+                    List<Object> fields = new ArrayList<>(map.size() * 2);
+                    map.forEach((field, value) -> {
+                        fields.add(field);
+                        fields.add(value);
+                    });
+                    userDTO = BeanMappers.toUserDTO(fields);
+                }
+                sink += userDTO.getId();
+            }
+            long cost = System.nanoTime() - begin;
+            bytes = threadBean.getThreadAllocatedBytes(threadId) - bytes;
+            System.out.println(mode + "：" + cost / rounds + " ns/次，" + bytes / rounds + " 字节/次，" + sink);
+            // 两种转换的结果一致
+            assertEquals(expected, userDTO, mode);
+        }
+    }
+
+    /**
+     * 模拟刷验证码和暴力猜验证码：同一手机号、同一IP连续请求，统计放行次数和单次耗时
+     */
+    @Test
+    void testLoginCodeLimiter() {
+        String phone = "13900000000";
+        String ip = "10.0.0.1";
+        stringRedisTemplate.delete(stringRedisTemplate.keys(LOGIN_LIMIT_KEY + "*" + phone + "*"));
+        stringRedisTemplate.delete(stringRedisTemplate.keys(LOGIN_LIMIT_KEY + "*" + ip + "*"));
+        int rounds = 1000;
+        int sent = 0;
+        long begin = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            if (loginCodeLimiter.send(phone, ip, "123456") == LoginCodeLimiter.OK) {
+                sent++;
+            }
+        }
+        System.out.println("发送验证码：请求" + rounds + "次，放行" + sent + "次，"
+                + (System.nanoTime() - begin) / rounds / 1000 + " us/次");
+        // 逐个猜验证码，达到错误次数上限后验证码作废，之后猜中也无法登录
+        int attempts = 0;
+        int result;
+        do {
+            result = loginCodeLimiter.verify(phone, ip, String.format("%06d", attempts++));
+        } while (result == LoginCodeLimiter.WRONG_CODE);
+        int retry = loginCodeLimiter.verify(phone, ip, "123456");
+        System.out.println("猜测" + attempts + "次后结果：" + result + "，正确验证码再次校验：" + retry);
+        System.out.println(loginCodeLimiter.stats());
+        // 同一手机号60秒内只放行一次
+        assertEquals(1, sent);
+        // 达到错误次数上限后验证码作废，正确的验证码也无法登录
+        assertEquals(LoginCodeLimiter.CODE_INVALIDATED, result);
+        assertEquals(loginProperties.getLimit().getMaxAttempts(), attempts);
+        assertEquals(LoginCodeLimiter.NO_CODE, retry);
+    }
+
+    /**
+     * 热门博客点赞风暴：多线程对同一博客点赞再取消，对比逐次 UPDATE 的写入次数与合并写回的 UPDATE 次数
+     */
+    @Test
+    void testBlogLikeStorm() throws InterruptedException {
+        Long blogId = 4L;
+        // 以Redis中的点赞数为准，可能还有未写回的点赞
+        Blog blog = blogService.getById(blogId);
+        blogLikeCounter.fillLiked(Collections.singletonList(blog));
+        Integer before = blog.getLiked();
+        int threads = 20;
+        int usersPerThread = 500;
+        long updates = (long) blogLikeCounter.stats().get("updates");
+        ExecutorService es = Executors.newFixedThreadPool(threads);
+        CountDownLatch latch = new CountDownLatch(threads);
+        long begin = System.currentTimeMillis();
+        for (int t = 0; t < threads; t++) {
+            long firstUser = 1000000L + (long) t * usersPerThread;
+            es.submit(() -> {
+                try {
+                    // 每个用户点赞一次、取消一次，结束后点赞数不变
+                    for (long u = firstUser; u < firstUser + usersPerThread; u++) {
+                        blogLikeCounter.toggle(blogId, u);
+                    }
+                    for (long u = firstUser; u < firstUser + usersPerThread; u++) {
+                        blogLikeCounter.toggle(blogId, u);
+                    }
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+        latch.await();
+        long cost = System.currentTimeMillis() - begin;
+        blogLikeCounter.flush();
+        es.shutdown();
+        Blog after = blogService.getById(blogId);
+        long toggles = (long) threads * usersPerThread * 2;
+        System.out.println("点赞操作" + toggles + "次，耗时" + cost + "ms；逐次写库需要 " + toggles + " 条UPDATE，合并写回 "
+                + ((long) blogLikeCounter.stats().get("updates") - updates) + " 条");
+        System.out.println("点赞数：写入前 " + before + "，写回后 " + after.getLiked() + "，"
+                + blogLikeCounter.stats());
+        // 每个用户点赞、取消各一次，写回后点赞数不变；多次点赞合并写入，UPDATE 条数远少于点赞次数
+        assertEquals(before, after.getLiked());
+        assertTrue((long) blogLikeCounter.stats().get("updates") - updates < toggles);
+    }
+
     /**
      * 将用户信息存入Redis，并返回token文件
      */